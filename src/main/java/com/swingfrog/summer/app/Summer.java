@@ -92,6 +92,7 @@ public class Summer {
 		RedisMgr.get().loadConfig(redisProperties);
 		DataBaseMgr.get().loadConfig(dbProperties);
 		AsyncCacheRepositoryMgr.get().loadConfig(dbProperties);
+		RepositoryMgr.get().loadConfig(dbProperties);
 		TaskMgr.get().init(taskProperties);
 		ContainerMgr.get().init(projectPackage);
 		ServerMgr.get().init();
@@ -217,6 +218,10 @@ public class Summer {
 		return ClientMgr.get().getClientRemote(cluster, name);
 	}
 	
+	public static ClientRemote getBulkClientRemote(String cluster, String name) {
+		return ClientMgr.get().getBulkClientRemote(cluster, name);
+	}
+	
 	public static ClientRemote getRandomClientRemote(String cluster) {
 		return ClientMgr.get().getRandomClientRemote(cluster);
 	}
@@ -293,6 +298,22 @@ public class Summer {
 		}
 	}
 	
+	public static void loadReplicaDataSource(String dbProperties) {
+		try {
+			DataBaseMgr.get().loadReplicaConfig(dbProperties);
+		} catch (Exception e) {
+			log.error(e.getMessage(), e);
+		}
+	}
+	
+	public static void loadReplicaDataSource(String topic, String dbProperties) {
+		try {
+			DataBaseMgr.get().loadReplicaConfigForOther(topic, dbProperties);
+		} catch (Exception e) {
+			log.error(e.getMessage(), e);
+		}
+	}
+	
 	public static void logo() {
 		StringBuilder logo = new StringBuilder();
 		logo.append("\n");
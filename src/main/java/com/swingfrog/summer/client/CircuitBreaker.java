@@ -0,0 +1,181 @@
+package com.swingfrog.summer.client;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.swingfrog.summer.config.ClientConfig;
+
+/**
+ * 熔断器, 按最近的请求统计错误率(包括超时和慢请求), 超过阈值时熔断, 熔断时间结束后放行一个探测请求
+ */
+public class CircuitBreaker {
+
+	private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+	private static final int DEFAULT_WINDOW = 100;
+	private static final int MIN_LATENCY_SAMPLE = 10;
+	private static final int MIN_PROBE_WAIT_MS = 100;
+	
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+	
+	private final String serverName;
+	private final int errorPercent;
+	private final int slowMs;
+	private final int openMs;
+	private final boolean[] failures;
+	private final long[] costs;
+	private int index;
+	private int count;
+	private int failureCount;
+	private volatile State state = State.CLOSED;
+	private volatile long openTime;
+	private final AtomicBoolean probing = new AtomicBoolean(false);
+	
+	public CircuitBreaker(ClientConfig config) {
+		this.serverName = config.getServerName();
+		this.errorPercent = config.getBreakerErrorPercent();
+		this.slowMs = config.getBreakerSlowMs();
+		this.openMs = config.getBreakerOpenMs();
+		int window = config.getBreakerWindow() > 0 ? config.getBreakerWindow() : DEFAULT_WINDOW;
+		this.failures = new boolean[window];
+		this.costs = new long[window];
+	}
+	
+	public boolean isEnable() {
+		return errorPercent > 0;
+	}
+	
+	public boolean allowRequest() {
+		if (!isEnable()) {
+			return true;
+		}
+		if (state == State.CLOSED) {
+			return true;
+		}
+		if (state == State.OPEN) {
+			if (System.currentTimeMillis() - openTime < openMs) {
+				return false;
+			}
+			synchronized (this) {
+				if (state == State.OPEN) {
+					state = State.HALF_OPEN;
+					probing.set(false);
+					log.info("client circuit breaker serverName[{}] half open", serverName);
+				}
+			}
+		}
+		return probing.compareAndSet(false, true);
+	}
+	
+	public boolean isOpen() {
+		return isEnable() && state == State.OPEN && System.currentTimeMillis() - openTime < openMs;
+	}
+	
+	public long getRemainingOpenMs() {
+		if (!isOpen()) {
+			return 0;
+		}
+		return Math.max(0, openMs - (System.currentTimeMillis() - openTime));
+	}
+	
+	/**
+	 * 重试前等待, 熔断时等待剩余的熔断时间, 半开时等待探测请求的结果(最长openMs), 关闭时立即返回
+	 */
+	public void awaitRetry() throws InterruptedException {
+		if (!isEnable()) {
+			return;
+		}
+		if (state == State.OPEN) {
+			long waitMs = getRemainingOpenMs();
+			if (waitMs > 0) {
+				Thread.sleep(waitMs);
+			}
+			return;
+		}
+		synchronized (this) {
+			long deadline = System.currentTimeMillis() + Math.max(openMs, MIN_PROBE_WAIT_MS);
+			while (state == State.HALF_OPEN && probing.get()) {
+				long waitMs = deadline - System.currentTimeMillis();
+				if (waitMs <= 0) {
+					break;
+				}
+				wait(waitMs);
+			}
+		}
+	}
+	
+	public void recordSuccess(long costMs) {
+		record(true, costMs);
+	}
+	
+	public void recordFailure(long costMs) {
+		record(false, costMs);
+	}
+	
+	private synchronized void record(boolean success, long costMs) {
+		boolean failure = !success || (slowMs > 0 && costMs >= slowMs);
+		if (count == failures.length && failures[index]) {
+			failureCount --;
+		}
+		failures[index] = failure;
+		costs[index] = costMs;
+		if (failure) {
+			failureCount ++;
+		}
+		index = (index + 1) % failures.length;
+		if (count < failures.length) {
+			count ++;
+		}
+		if (!isEnable()) {
+			return;
+		}
+		if (state == State.HALF_OPEN) {
+			probing.set(false);
+			if (failure) {
+				open();
+			} else {
+				close();
+			}
+			notifyAll();
+		} else if (state == State.CLOSED && count == failures.length && failureCount * 100 >= errorPercent * count) {
+			open();
+		}
+	}
+	
+	private void open() {
+		state = State.OPEN;
+		openTime = System.currentTimeMillis();
+		log.warn("client circuit breaker serverName[{}] open, failure[{}/{}]", serverName, failureCount, count);
+	}
+	
+	private void close() {
+		state = State.CLOSED;
+		Arrays.fill(failures, false);
+		index = 0;
+		count = 0;
+		failureCount = 0;
+		log.info("client circuit breaker serverName[{}] closed", serverName);
+	}
+	
+	/**
+	 * 最近请求耗时的百分位数, 样本不足时返回-1
+	 */
+	public synchronized long getLatencyPercentile(int percentile) {
+		if (count < MIN_LATENCY_SAMPLE) {
+			return -1;
+		}
+		long[] samples = Arrays.copyOf(costs, count);
+		Arrays.sort(samples);
+		int i = (int) Math.ceil(percentile / 100.0 * samples.length) - 1;
+		return samples[Math.max(0, Math.min(samples.length - 1, i))];
+	}
+	
+	public State getState() {
+		return state;
+	}
+
+}
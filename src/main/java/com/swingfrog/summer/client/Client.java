@@ -1,5 +1,11 @@
 package com.swingfrog.summer.client;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.quartz.SchedulerException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,8 +25,13 @@ import io.netty.util.concurrent.DefaultThreadFactory;
 public class Client {
 
 	private static final Logger log = LoggerFactory.getLogger(Client.class);
+	private static final long DEFAULT_RECONNECT_MAX_MS = 30000;
 	private ClientContext clientContext;
-	private ClientRemote clientRemote;
+	private ClientGroup clientGroup;
+	private List<ClientRemote> clientRemoteList = new ArrayList<>();
+	private List<ClientRemote> bulkClientRemoteList = new ArrayList<>();
+	private AtomicInteger next = new AtomicInteger(-1);
+	private AtomicInteger bulkNext = new AtomicInteger(-1);
 	private EventLoopGroup workerGroup;
 	private int id;
 	
@@ -38,15 +49,39 @@ public class Client {
 		log.info("client msgLength {}", config.getMsgLength());
 		log.info("client heartSec {}", config.getHeartSec());
 		log.info("client reconnectMs {}", config.getReconnectMs());
+		log.info("client reconnectMaxMs {}", config.getReconnectMaxMs());
 		log.info("client syncRemoteTimeOutMs {}", config.getSyncRemoteTimeOutMs());
 		log.info("client connectNum {}", config.getConnectNum());
+		log.info("client multiplex {}", config.isMultiplex());
+		log.info("client streamNum {}", config.getStreamNum());
+		log.info("client bulkStreamNum {}", config.getBulkStreamNum());
+		log.info("client streamWindow {}", config.getStreamWindow());
+		log.info("client breakerErrorPercent {}", config.getBreakerErrorPercent());
+		log.info("client breakerSlowMs {}", config.getBreakerSlowMs());
+		log.info("client breakerWindow {}", config.getBreakerWindow());
+		log.info("client breakerOpenMs {}", config.getBreakerOpenMs());
+		log.info("client hedgePercentile {}", config.getHedgePercentile());
+		log.info("client retryBudgetPercent {}", config.getRetryBudgetPercent());
+		log.info("client retryMinPerSec {}", config.getRetryMinPerSec());
+		log.info("client requestQueueSize {}", config.getRequestQueueSize());
+		log.info("client requestQueuePolicy {}", config.getRequestQueuePolicy());
 		workerGroup = new NioEventLoopGroup(config.getWorkerThread(), new DefaultThreadFactory("ClientWorker", true));
 		clientContext = new ClientContext(config, this, new NioEventLoopGroup(config.getEventThread(), new DefaultThreadFactory("ClientEvent", true)));
-		clientRemote = new ClientRemote(clientContext);
+		int streamNum = Math.max(1, config.getStreamNum());
+		for (int i = 0; i < streamNum; i ++) {
+			clientRemoteList.add(new ClientRemote(clientContext, clientContext.addStream(ClientStream.Priority.CONTROL)));
+		}
+		for (int i = 0; i < config.getBulkStreamNum(); i ++) {
+			bulkClientRemoteList.add(new ClientRemote(clientContext, clientContext.addStream(ClientStream.Priority.BULK)));
+		}
 		startCheckHeartTimeTask();
 	}
 
 	public void connect() {
+		if (clientContext.getConnectState() == ClientContext.ConnectState.CLOSED) {
+			return;
+		}
+		clientContext.setConnectState(ClientContext.ConnectState.CONNECTING);
 		try {
 			log.info("client[{}] connect {}:{}", clientContext.getConfig().getServerName(), clientContext.getConfig().getAddress(), clientContext.getConfig().getPort());
 			Bootstrap b = new Bootstrap();
@@ -55,11 +90,34 @@ public class Client {
 			b.connect().addListener(new ConnectionListener());
 		} catch (Exception e) {
 			log.error(e.getMessage(), e);
+			reconnect(workerGroup);
 		}
 	}
+	
+	/**
+	 * 按指数退避加随机抖动计算等待时间, 由事件循环定时重连, 不阻塞事件循环上的其他连接
+	 */
+	public void reconnect(EventLoopGroup eventLoop) {
+		if (clientContext.getConnectState() == ClientContext.ConnectState.CLOSED || eventLoop.isShuttingDown()) {
+			return;
+		}
+		clientContext.setConnectState(ClientContext.ConnectState.DISCONNECTED);
+		long delayMs = getReconnectDelayMs(clientContext.incrementReconnectCount());
+		log.info("reconnect for {} after {}ms", clientContext.getConfig().getServerName(), delayMs);
+		eventLoop.schedule(this::connect, delayMs, TimeUnit.MILLISECONDS);
+	}
+	
+	private long getReconnectDelayMs(int count) {
+		long baseMs = Math.max(1, clientContext.getConfig().getReconnectMs());
+		long maxMs = clientContext.getConfig().getReconnectMaxMs() > 0 ? clientContext.getConfig().getReconnectMaxMs() : DEFAULT_RECONNECT_MAX_MS;
+		long delayMs = Math.min(maxMs, baseMs << Math.min(count, 20));
+		long halfMs = delayMs / 2;
+		return halfMs + ThreadLocalRandom.current().nextLong(delayMs - halfMs + 1);
+	}
 
 	public void shutdown() {
 		log.info("client[{}] shutdown", clientContext.getConfig().getServerName());
+		clientContext.setConnectState(ClientContext.ConnectState.CLOSED);
 		try {
 			workerGroup.shutdownGracefully().sync();
 		} catch (InterruptedException e) {
@@ -73,15 +131,7 @@ public class Client {
 			if (f.isSuccess()) {
 				log.info("connect {} success", clientContext.getConfig().getServerName());
 			} else {
-				f.channel().eventLoop().execute(()->{
-					try {
-						Thread.sleep(clientContext.getConfig().getReconnectMs());
-					} catch (InterruptedException e) {
-						log.error(e.getMessage(), e);
-					}
-					log.info("reconnect for {}", clientContext.getConfig().getServerName());
-					connect();
-				});
+				reconnect(f.channel().eventLoop());
 			}
 		} 
 	}
@@ -91,7 +141,33 @@ public class Client {
 	}
 	
 	public ClientRemote getClientRemote() {
-		return clientRemote;
+		return nextClientRemote(clientRemoteList, next);
+	}
+	
+	public ClientRemote getBulkClientRemote() {
+		if (bulkClientRemoteList.isEmpty()) {
+			return getClientRemote();
+		}
+		return nextClientRemote(bulkClientRemoteList, bulkNext);
+	}
+	
+	private ClientRemote nextClientRemote(List<ClientRemote> list, AtomicInteger index) {
+		if (list.size() == 1) {
+			return list.get(0);
+		}
+		return list.get(Math.floorMod(index.incrementAndGet(), list.size()));
+	}
+
+	public ClientContext.ConnectState getConnectState() {
+		return clientContext.getConnectState();
+	}
+	
+	public ClientGroup getClientGroup() {
+		return clientGroup;
+	}
+	
+	public void setClientGroup(ClientGroup clientGroup) {
+		this.clientGroup = clientGroup;
 	}
 
 	private void startCheckHeartTimeTask() throws SchedulerException {
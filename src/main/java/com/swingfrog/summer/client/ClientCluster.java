@@ -5,10 +5,11 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ClientCluster {
 
-	private int next = -1;
+	private AtomicInteger next = new AtomicInteger(-1);
 	private List<ClientGroup> clientGroupList;
 	private Map<String, ClientGroup> nameToClientGroup;
 	
@@ -32,9 +33,13 @@ public class ClientCluster {
 			if (size == 1) {
 				return clientGroupList.get(0).getClientWithNext();
 			}
-			next ++;
-			next = next % size;
-			return clientGroupList.get(next % size).getClientWithNext();
+			for (int i = 0; i < size; i ++) {
+				ClientGroup clientGroup = clientGroupList.get(Math.floorMod(next.incrementAndGet(), size));
+				if (!clientGroup.getCircuitBreaker().isOpen()) {
+					return clientGroup.getClientWithNext();
+				}
+			}
+			return clientGroupList.get(Math.floorMod(next.incrementAndGet(), size)).getClientWithNext();
 		}
 		return null;
 	}
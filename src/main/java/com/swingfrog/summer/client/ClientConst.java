@@ -0,0 +1,7 @@
+package com.swingfrog.summer.client;
+
+public class ClientConst {
+
+	public static final String REQUEST_QUEUE_POLICY_REJECT = "reject";
+	public static final String REQUEST_QUEUE_POLICY_DISCARD_OLDEST = "discardOldest";
+}
@@ -1,32 +1,53 @@
 package com.swingfrog.summer.client;
 
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import com.swingfrog.summer.config.ClientConfig;
 import com.swingfrog.summer.protocol.SessionRequest;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.util.concurrent.DefaultThreadFactory;
 
 public class ClientContext {
 
+	private static final Logger log = LoggerFactory.getLogger(ClientContext.class);
+	
+	public enum ConnectState {
+		/**未连接, 等待重连*/
+		DISCONNECTED,
+		/**连接中*/
+		CONNECTING,
+		/**已连接*/
+		CONNECTED,
+		/**已关闭, 不再重连*/
+		CLOSED
+	}
+	
 	private ClientConfig config;
 	private Client client;
 	private AtomicReference<ChannelHandlerContext> channel = new AtomicReference<>();
 	private EventLoopGroup eventGroup;
-	private EventLoopGroup pushGroup;
 	private AtomicInteger heartCount = new AtomicInteger(0);
-	private ConcurrentLinkedQueue<SessionRequest> requestQueue = new ConcurrentLinkedQueue<>();
+	private BlockingQueue<SessionRequest> requestQueue;
+	private volatile ConnectState connectState = ConnectState.DISCONNECTED;
+	private AtomicInteger reconnectCount = new AtomicInteger(0);
+	private List<ClientStream> streams = new CopyOnWriteArrayList<>();
+	private ClientStreamWriter streamWriter;
 	
 	public ClientContext(ClientConfig config, Client client, EventLoopGroup eventGroup) {
 		this.config = config;
 		this.client = client;
 		this.eventGroup = eventGroup;
-		this.pushGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("ClientPush", true));
+		this.streamWriter = new ClientStreamWriter(this);
+		this.requestQueue = config.getRequestQueueSize() > 0 ? new LinkedBlockingQueue<>(config.getRequestQueueSize()) : new LinkedBlockingQueue<>();
 	}
 	public ClientConfig getConfig() {
 		return config;
@@ -52,19 +73,53 @@ public class ClientContext {
 	public void setEventGroup(EventLoopGroup eventGroup) {
 		this.eventGroup = eventGroup;
 	}
-	public EventLoopGroup getPushGroup() {
-		return pushGroup;
-	}
-	public void setPushGroup(EventLoopGroup pushGroup) {
-		this.pushGroup = pushGroup;
-	}
 	public int getHeartCount() {
 		return heartCount.get();
 	}
 	public void setHeartCount(int heartCount) {
 		this.heartCount.set(heartCount);
 	}
-	public ConcurrentLinkedQueue<SessionRequest> getRequestQueue() {
+	public BlockingQueue<SessionRequest> getRequestQueue() {
 		return requestQueue;
 	}
+	public boolean offerRequest(SessionRequest sessionRequest) {
+		if (requestQueue.offer(sessionRequest)) {
+			return true;
+		}
+		if (ClientConst.REQUEST_QUEUE_POLICY_DISCARD_OLDEST.equals(config.getRequestQueuePolicy())) {
+			SessionRequest oldest = requestQueue.poll();
+			if (oldest != null) {
+				log.warn("client serverName[{}] request queue full, discard request id[{}]", config.getServerName(), oldest.getId());
+				PushDispatchMgr.get().removeAsyncRemote(oldest.getId());
+			}
+			return requestQueue.offer(sessionRequest);
+		}
+		return false;
+	}
+	public ConnectState getConnectState() {
+		return connectState;
+	}
+	public void setConnectState(ConnectState connectState) {
+		this.connectState = connectState;
+	}
+	public int getReconnectCount() {
+		return reconnectCount.get();
+	}
+	public int incrementReconnectCount() {
+		return reconnectCount.getAndIncrement();
+	}
+	public void resetReconnectCount() {
+		reconnectCount.set(0);
+	}
+	public List<ClientStream> getStreams() {
+		return streams;
+	}
+	public ClientStream addStream(ClientStream.Priority priority) {
+		ClientStream stream = new ClientStream(streams.size(), priority, config.getStreamWindow());
+		streams.add(stream);
+		return stream;
+	}
+	public ClientStreamWriter getStreamWriter() {
+		return streamWriter;
+	}
 }
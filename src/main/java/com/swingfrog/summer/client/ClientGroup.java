@@ -2,18 +2,26 @@ package com.swingfrog.summer.client;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.swingfrog.summer.config.ClientConfig;
 
 public class ClientGroup {
 
-	private int next = -1;
+	private AtomicInteger next = new AtomicInteger(-1);
 	private List<Client> clientList;
+	private CircuitBreaker circuitBreaker;
+	private RetryBudget retryBudget;
 	
-	public ClientGroup() {
+	public ClientGroup(ClientConfig config) {
 		clientList = new ArrayList<>();
+		circuitBreaker = new CircuitBreaker(config);
+		retryBudget = new RetryBudget(config);
 	}
 	
 	public void addClient(Client client) {
 		clientList.add(client);
+		client.setClientGroup(this);
 	}
 	
 	public Client getClientWithNext() {
@@ -22,14 +30,36 @@ public class ClientGroup {
 			if (size == 1) {
 				return clientList.get(0);
 			}
-			next ++;
-			next = next % size;
-			return clientList.get(next % size);
+			return clientList.get(Math.floorMod(next.incrementAndGet(), size));
 		}
 		return null;
 	}
 	
+	/**
+	 * 同组中另一个连接, 用于对冲请求, 只有一个连接时(包括多路复用)返回null
+	 */
+	public Client getOtherClient(Client client) {
+		int size = clientList.size();
+		if (size < 2) {
+			return null;
+		}
+		int index = clientList.indexOf(client);
+		if (index < 0) {
+			return getClientWithNext();
+		}
+		int offset = 1 + Math.floorMod(next.incrementAndGet(), size - 1);
+		return clientList.get((index + offset) % size);
+	}
+	
 	public List<Client> listClients() {
 		return clientList;
 	}
+	
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+	
+	public RetryBudget getRetryBudget() {
+		return retryBudget;
+	}
 }
@@ -52,8 +52,12 @@ public class ClientMgr {
 					clientCluster = new ClientCluster();
 					nameToCluster.put(config.getCluster(), clientCluster);
 				}
-				ClientGroup clientGroup = new ClientGroup();
-				for (int j = 0; j < config.getConnectNum(); j ++) {
+				ClientGroup clientGroup = new ClientGroup(config);
+				int connectNum = config.isMultiplex() ? 1 : config.getConnectNum();
+				if (config.getHedgePercentile() > 0 && connectNum < 2) {
+					log.warn("client serverName[{}] hedge request need connectNum >= 2 and multiplex off, hedge disabled", config.getServerName());
+				}
+				for (int j = 0; j < connectNum; j ++) {
 					clientGroup.addClient(new Client(j, config));
 				}
 				clientCluster.addClient(config.getServerName(), clientGroup);
@@ -87,6 +91,7 @@ public class ClientMgr {
 					clients.get(i).shutdown();
 				}
 			}
+			PushDispatchMgr.get().shutdown();
 		}
 	}
 	
@@ -101,6 +106,17 @@ public class ClientMgr {
 		return null;
 	}
 
+	public ClientRemote getBulkClientRemote(String cluster, String name) {
+		ClientCluster clientCluster = nameToCluster.get(cluster);
+		if (clientCluster != null) {
+			Client client = clientCluster.getClientByName(name);
+			if (client != null) {
+				return client.getBulkClientRemote();
+			}
+		}
+		return null;
+	}
+
 	public ClientRemote getRandomClientRemote(String cluster) {
 		ClientCluster clientCluster = nameToCluster.get(cluster);
 		if (clientCluster != null) {
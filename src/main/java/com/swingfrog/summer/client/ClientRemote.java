@@ -1,11 +1,16 @@
 package com.swingfrog.summer.client;
 
 import java.lang.reflect.Type;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.alibaba.fastjson.JSON;
+import com.swingfrog.summer.client.exception.CircuitBreakerOpenException;
+import com.swingfrog.summer.client.exception.RequestQueueFullException;
 import com.swingfrog.summer.client.exception.SyncRemoteTimeOutException;
 import com.swingfrog.summer.protocol.SessionRequest;
 import com.swingfrog.summer.protocol.SessionResponse;
@@ -15,80 +20,123 @@ public class ClientRemote {
 	
 	private static Logger log = LoggerFactory.getLogger(ClientRemote.class);
 	private ClientContext clientContext;
+	private ClientStream stream;
 	
-	public ClientRemote(ClientContext clientContext) {
+	public ClientRemote(ClientContext clientContext, ClientStream stream) {
 		this.clientContext = clientContext;
+		this.stream = stream;
 	}
 	
 	public String getServerName() {
 		return clientContext.getConfig().getServerName();
 	}
 	
+	public ClientStream getStream() {
+		return stream;
+	}
+	
 	public void asyncRemote(String remote, String method, Object data, RemoteCallback remoteCallback) {
 		if (remoteCallback == null) {
 			throw new NullPointerException("remoteCallback is null");
 		}
+		if (getCircuitBreaker().isOpen()) {
+			throw new CircuitBreakerOpenException(getServerName(), remote, method);
+		}
 		SessionRequest sessionRequest = SessionRequest.buildRemote(
 				ClientMgr.get().incrementCurrentId(), remote, method, data);
-		PushDispatchMgr.get().putAsyncRemote(sessionRequest.getId(), remoteCallback);
-		if (clientContext.getChannel() != null) {
-			String msg = sessionRequest.toJSONString();
-			log.debug("client request serverName[{}] async {}", clientContext.getConfig().getServerName(), msg);
-			clientContext.getChannel().writeAndFlush(msg);
-		} else {
-			clientContext.getRequestQueue().add(sessionRequest);
+		BreakerCallback breakerCallback = new BreakerCallback(getCircuitBreaker(), remoteCallback);
+		PushDispatchMgr.get().putAsyncRemote(sessionRequest.getId(), breakerCallback);
+		if (log.isDebugEnabled())
+			log.debug("client request serverName[{}] {} async {}", clientContext.getConfig().getServerName(), stream, sessionRequest.toJSONString());
+		if (!clientContext.getStreamWriter().write(stream, sessionRequest)) {
+			if (!clientContext.offerRequest(sessionRequest)) {
+				PushDispatchMgr.get().removeAsyncRemote(sessionRequest.getId());
+				throw new RequestQueueFullException(getServerName(), remote, method);
+			}
+		}
+		int timeOutMs = clientContext.getConfig().getSyncRemoteTimeOutMs();
+		if (getCircuitBreaker().isEnable() && timeOutMs > 0) {
+			clientContext.getEventGroup().schedule(() -> breakerCallback.timeout(timeOutMs), timeOutMs, TimeUnit.MILLISECONDS);
 		}
 	}
 	
-	@SuppressWarnings("unchecked")
 	public <T> T syncRemote(String remote, String method, Object data, Type type) {
+		CircuitBreaker circuitBreaker = getCircuitBreaker();
+		if (!circuitBreaker.allowRequest()) {
+			throw new CircuitBreakerOpenException(getServerName(), remote, method);
+		}
+		getRetryBudget().deposit();
+		long startTime = System.currentTimeMillis();
+		SessionResponse sessionResponse = null;
+		try {
+			sessionResponse = waitResponse(remote, method, data);
+		} finally {
+			long costMs = System.currentTimeMillis() - startTime;
+			if (sessionResponse != null) {
+				circuitBreaker.recordSuccess(costMs);
+			} else {
+				circuitBreaker.recordFailure(costMs);
+			}
+		}
+		return parseResponse(sessionResponse, type);
+	}
+	
+	private SessionResponse waitResponse(String remote, String method, Object data) {
 		try {
 			int count = 0;
+			int timeOutMs = clientContext.getConfig().getSyncRemoteTimeOutMs();
+			long hedgeMs = getHedgeMs();
 			while (true) {
-				if (clientContext.getChannel() != null) {
-					SessionRequest sessionRequest = SessionRequest.buildRemote(
-							ClientMgr.get().incrementCurrentId(), remote, method, data);
-					String msg = sessionRequest.toJSONString();
-					log.debug("client request serverName[{}] sync {}", clientContext.getConfig().getServerName(), msg);
-					clientContext.getChannel().writeAndFlush(msg);
-					while (true) {
-						SessionResponse sessionResponse = PushDispatchMgr.get().getAndRemoveSyncRemote(sessionRequest.getId());
-						if (sessionResponse != null) {
-							if (sessionResponse.getCode() != 0) {
-								throw new CodeException(sessionResponse.getCode(), sessionResponse.getData().toString());
+				SessionRequest sessionRequest = sendRequest(remote, method, data);
+				if (sessionRequest != null) {
+					ClientRemote hedgeRemote = null;
+					SessionRequest hedgeRequest = null;
+					try {
+						while (true) {
+							SessionResponse sessionResponse = PushDispatchMgr.get().getAndRemoveSyncRemote(sessionRequest.getId());
+							if (sessionResponse != null) {
+								if (hedgeRequest != null) {
+									hedgeRemote.discardRequest(hedgeRequest);
+								}
+								return sessionResponse;
+							}
+							if (hedgeRequest != null) {
+								sessionResponse = PushDispatchMgr.get().getAndRemoveSyncRemote(hedgeRequest.getId());
+								if (sessionResponse != null) {
+									log.debug("client hedge request serverName[{}] id[{}] win", getServerName(), hedgeRequest.getId());
+									discardRequest(sessionRequest);
+									return sessionResponse;
+								}
 							}
-							Object resp = sessionResponse.getData();
-							if (resp != null) {
-								String res = resp.toString();
-								if (type == boolean.class || type == Boolean.class) {
-									return (T) Boolean.valueOf(res);
-								} else if (type == byte.class || type == Byte.class) {
-									return (T) ((Object) Byte.parseByte(res));
-								} else if (type == short.class || type == Short.class) {
-									return (T) ((Object) Short.parseShort(res));
-								} else if (type == int.class || type == Integer.class) {
-									return (T) ((Object) Integer.parseInt(res));
-								} else if (type == long.class || type == Long.class) {
-									return (T) ((Object) Long.parseLong(res));
-								} else if (type == String.class) {
-									return (T) res;
+							Thread.sleep(1);
+							count ++;
+							if (hedgeMs >= 0 && count >= hedgeMs && hedgeRemote == null) {
+								hedgeRemote = getHedgeRemote();
+								if (hedgeRemote != null) {
+									hedgeRequest = hedgeRemote.sendRequest(remote, method, data);
 								} else {
-									return (T) JSON.parseObject(res, type);
+									hedgeMs = -1;
 								}
 							}
-							return null;
+							if (count > timeOutMs) {
+								discardRequest(sessionRequest);
+								if (hedgeRequest != null) {
+									hedgeRemote.discardRequest(hedgeRequest);
+								}
+								throw new SyncRemoteTimeOutException(remote, method);
+							}
 						}
-						Thread.sleep(1);
-						count ++;
-						if (count > clientContext.getConfig().getSyncRemoteTimeOutMs()) {
-							PushDispatchMgr.get().discardSyncRemote(sessionRequest.getId());
-							throw new SyncRemoteTimeOutException(remote, method);
+					} catch (InterruptedException e) {
+						discardRequest(sessionRequest);
+						if (hedgeRequest != null) {
+							hedgeRemote.discardRequest(hedgeRequest);
 						}
+						throw e;
 					}
 				}
 				Thread.sleep(1);
 				count ++;
-				if (count > clientContext.getConfig().getSyncRemoteTimeOutMs()) {
+				if (count > timeOutMs) {
 					throw new SyncRemoteTimeOutException(remote, method);
 				}
 			}
@@ -97,15 +145,152 @@ public class ClientRemote {
 		}
 		return null;
 	}
+	
+	private SessionRequest sendRequest(String remote, String method, Object data) {
+		if (clientContext.getChannel() == null) {
+			return null;
+		}
+		SessionRequest sessionRequest = SessionRequest.buildRemote(
+				ClientMgr.get().incrementCurrentId(), remote, method, data);
+		if (log.isDebugEnabled())
+			log.debug("client request serverName[{}] {} sync {}", clientContext.getConfig().getServerName(), stream, sessionRequest.toJSONString());
+		if (!clientContext.getStreamWriter().write(stream, sessionRequest)) {
+			return null;
+		}
+		return sessionRequest;
+	}
+	
+	private void discardRequest(SessionRequest sessionRequest) {
+		PushDispatchMgr.get().discardSyncRemote(sessionRequest.getId());
+		PushDispatchMgr.get().getAndRemoveSyncRemote(sessionRequest.getId());
+		clientContext.getStreamWriter().discard(stream, sessionRequest.getId());
+	}
+	
+	private long getHedgeMs() {
+		int hedgePercentile = clientContext.getConfig().getHedgePercentile();
+		if (hedgePercentile <= 0) {
+			return -1;
+		}
+		return getCircuitBreaker().getLatencyPercentile(hedgePercentile);
+	}
+	
+	private ClientRemote getHedgeRemote() {
+		Client client = clientContext.getClient();
+		Client other = client.getClientGroup().getOtherClient(client);
+		if (other == null || !getRetryBudget().tryAcquire()) {
+			return null;
+		}
+		return stream.getPriority() == ClientStream.Priority.BULK ? other.getBulkClientRemote() : other.getClientRemote();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <T> T parseResponse(SessionResponse sessionResponse, Type type) {
+		if (sessionResponse == null) {
+			return null;
+		}
+		if (sessionResponse.getCode() != 0) {
+			throw new CodeException(sessionResponse.getCode(), sessionResponse.getData().toString());
+		}
+		Object resp = sessionResponse.getData();
+		if (resp != null) {
+			String res = resp.toString();
+			if (type == boolean.class || type == Boolean.class) {
+				return (T) Boolean.valueOf(res);
+			} else if (type == byte.class || type == Byte.class) {
+				return (T) ((Object) Byte.parseByte(res));
+			} else if (type == short.class || type == Short.class) {
+				return (T) ((Object) Short.parseShort(res));
+			} else if (type == int.class || type == Integer.class) {
+				return (T) ((Object) Integer.parseInt(res));
+			} else if (type == long.class || type == Long.class) {
+				return (T) ((Object) Long.parseLong(res));
+			} else if (type == String.class) {
+				return (T) res;
+			} else {
+				return (T) JSON.parseObject(res, type);
+			}
+		}
+		return null;
+	}
 
 	public <T> T rsyncRemote(String remote, String method, Object data, Type type) {
+		return rsyncRemote(this, () -> this, remote, method, data, type);
+	}
+	
+	/**
+	 * 超时或熔断时重试直到成功, 每次重试由supplier重新选择客户端, 不会一直请求同一个故障节点
+	 */
+	public static <T> T rsyncRemote(ClientRemote clientRemote, Supplier<ClientRemote> supplier, String remote, String method, Object data, Type type) {
 		while (true) {
 			try {				
-				return syncRemote(remote, method, data, type);
-			} catch (SyncRemoteTimeOutException e) {
-				log.error(e.getMessage(), e);
+				return clientRemote.syncRemote(remote, method, data, type);
+			} catch (SyncRemoteTimeOutException | CircuitBreakerOpenException e) {
+				if (!clientRemote.getRetryBudget().tryAcquire()) {
+					throw e;
+				}
+				String serverName = clientRemote.getServerName();
+				ClientRemote next = supplier.get();
+				if (next != null) {
+					clientRemote = next;
+				}
+				log.warn("client rsync remote serverName[{}] {}.{} retry on serverName[{}] - {}", serverName, remote, method, clientRemote.getServerName(), e.getMessage());
+				try {
+					clientRemote.getCircuitBreaker().awaitRetry();
+				} catch (InterruptedException ie) {
+					log.error(ie.getMessage(), ie);
+					return null;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * 异步请求的结果计入熔断器, 超过syncRemoteTimeOutMs未响应计为失败, 之后的响应仍然回调但不再计入
+	 */
+	private static class BreakerCallback implements RemoteCallback {
+		
+		private final CircuitBreaker circuitBreaker;
+		private final RemoteCallback callback;
+		private final long startTime = System.currentTimeMillis();
+		private final AtomicBoolean recorded = new AtomicBoolean(false);
+		
+		BreakerCallback(CircuitBreaker circuitBreaker, RemoteCallback callback) {
+			this.circuitBreaker = circuitBreaker;
+			this.callback = callback;
+		}
+		
+		@Override
+		public void success(Object obj) {
+			record();
+			callback.success(obj);
+		}
+		
+		@Override
+		public void failure(long code, String msg) {
+			record();
+			callback.failure(code, msg);
+		}
+		
+		private void record() {
+			if (recorded.compareAndSet(false, true)) {
+				circuitBreaker.recordSuccess(System.currentTimeMillis() - startTime);
+			}
+		}
+		
+		void timeout(long costMs) {
+			if (recorded.compareAndSet(false, true)) {
+				circuitBreaker.recordFailure(costMs);
 			}
 		}
+		
+	}
+	
+	private CircuitBreaker getCircuitBreaker() {
+		return clientContext.getClient().getClientGroup().getCircuitBreaker();
+	}
+	
+	private RetryBudget getRetryBudget() {
+		return clientContext.getClient().getClientGroup().getRetryBudget();
 	}
 	
 }
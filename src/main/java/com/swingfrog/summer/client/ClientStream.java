@@ -0,0 +1,105 @@
+package com.swingfrog.summer.client;
+
+import java.util.LinkedList;
+
+import com.swingfrog.summer.protocol.SessionRequest;
+
+/**
+ * 逻辑流, 多个逻辑流共用一个连接, 每个逻辑流拥有独立的在途请求窗口
+ */
+public class ClientStream {
+
+	public enum Priority {
+		/**控制流, 直接写入连接*/
+		CONTROL,
+		/**批量流, 连接不可写时排队, 不阻塞控制流*/
+		BULK
+	}
+	
+	private final int id;
+	private final Priority priority;
+	private final int window;
+	private int inFlight;
+	private final LinkedList<SessionRequest> pendingQueue = new LinkedList<>();
+	
+	public ClientStream(int id, Priority priority, int window) {
+		this.id = id;
+		this.priority = priority;
+		this.window = window;
+	}
+	
+	synchronized boolean acquire(SessionRequest request) {
+		if (window <= 0) {
+			return true;
+		}
+		if (inFlight < window && pendingQueue.isEmpty()) {
+			inFlight ++;
+			return true;
+		}
+		pendingQueue.add(request);
+		return false;
+	}
+	
+	synchronized SessionRequest acquirePending() {
+		if (pendingQueue.isEmpty()) {
+			return null;
+		}
+		if (window > 0 && inFlight >= window) {
+			return null;
+		}
+		inFlight ++;
+		return pendingQueue.poll();
+	}
+	
+	synchronized SessionRequest release() {
+		SessionRequest next = pendingQueue.poll();
+		if (next == null && inFlight > 0) {
+			inFlight --;
+		}
+		return next;
+	}
+	
+	synchronized void requeue(SessionRequest request) {
+		pendingQueue.addFirst(request);
+		if (inFlight > 0) {
+			inFlight --;
+		}
+	}
+	
+	/**
+	 * 移除还在排队的请求, 调用方超时或放弃后不再发送
+	 */
+	synchronized boolean cancel(long id) {
+		return pendingQueue.removeIf(request -> request.getId() == id);
+	}
+	
+	synchronized void reset() {
+		inFlight = 0;
+	}
+	
+	public int getId() {
+		return id;
+	}
+	
+	public Priority getPriority() {
+		return priority;
+	}
+	
+	public int getWindow() {
+		return window;
+	}
+	
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+	
+	public synchronized int getPendingSize() {
+		return pendingQueue.size();
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("stream[%s] %s", id, priority);
+	}
+
+}
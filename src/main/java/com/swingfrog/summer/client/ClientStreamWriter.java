@@ -0,0 +1,153 @@
+package com.swingfrog.summer.client;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.swingfrog.summer.protocol.SessionRequest;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.concurrent.ScheduledFuture;
+
+/**
+ * 负责将各逻辑流的请求写入连接, 控制流优先于批量流
+ * 窗口占用在收到响应, 请求超时(syncRemoteTimeOutMs)或断开连接时归还, 排队的批量请求只在连接的事件循环中写入, 保证顺序
+ * 同步调用超时或放弃时还在窗口外排队的请求会被移除, 不会在之后发送
+ */
+public class ClientStreamWriter {
+
+	private static final Logger log = LoggerFactory.getLogger(ClientStreamWriter.class);
+	private ClientContext clientContext;
+	private ConcurrentMap<Long, InFlight> inFlightMap = new ConcurrentHashMap<>();
+	private ConcurrentLinkedQueue<String> bulkQueue = new ConcurrentLinkedQueue<>();
+	
+	public ClientStreamWriter(ClientContext clientContext) {
+		this.clientContext = clientContext;
+	}
+	
+	public boolean write(ClientStream stream, SessionRequest request) {
+		ChannelHandlerContext ctx = clientContext.getChannel();
+		if (ctx == null) {
+			return false;
+		}
+		if (stream.acquire(request)) {
+			writeToChannel(ctx, stream, request);
+		} else {
+			log.debug("client serverName[{}] {} window full, pending request id[{}]", clientContext.getConfig().getServerName(), stream, request.getId());
+		}
+		return true;
+	}
+	
+	private void writeToChannel(ChannelHandlerContext ctx, ClientStream stream, SessionRequest request) {
+		if (stream.getWindow() > 0) {
+			InFlight inFlight = new InFlight(stream);
+			inFlightMap.put(request.getId(), inFlight);
+			int timeOutMs = clientContext.getConfig().getSyncRemoteTimeOutMs();
+			if (timeOutMs > 0) {
+				inFlight.timeout = ctx.executor().schedule(() -> timeout(request.getId(), inFlight), timeOutMs, TimeUnit.MILLISECONDS);
+			}
+		}
+		String msg = request.toJSONString();
+		if (stream.getPriority() == ClientStream.Priority.CONTROL) {
+			ctx.writeAndFlush(msg);
+		} else if (bulkQueue.isEmpty() && ctx.channel().isWritable()) {
+			ctx.writeAndFlush(msg);
+		} else {
+			bulkQueue.add(msg);
+			flushBulk(ctx);
+		}
+	}
+	
+	public void complete(long id) {
+		InFlight inFlight = inFlightMap.remove(id);
+		if (inFlight == null) {
+			return;
+		}
+		if (inFlight.timeout != null) {
+			inFlight.timeout.cancel(false);
+		}
+		release(inFlight.stream);
+	}
+	
+	/**
+	 * 调用方超时或放弃请求, 还在排队的直接移除, 已发送的归还窗口
+	 */
+	public void discard(ClientStream stream, long id) {
+		if (stream.cancel(id)) {
+			log.debug("client serverName[{}] {} cancel pending request id[{}]", clientContext.getConfig().getServerName(), stream, id);
+			return;
+		}
+		complete(id);
+	}
+	
+	private void timeout(long id, InFlight inFlight) {
+		if (inFlightMap.remove(id, inFlight)) {
+			log.warn("client serverName[{}] {} request id[{}] no response, release window", clientContext.getConfig().getServerName(), inFlight.stream, id);
+			release(inFlight.stream);
+		}
+	}
+	
+	private void release(ClientStream stream) {
+		SessionRequest next = stream.release();
+		if (next != null) {
+			ChannelHandlerContext ctx = clientContext.getChannel();
+			if (ctx != null) {
+				writeToChannel(ctx, stream, next);
+			} else {
+				stream.requeue(next);
+			}
+		}
+	}
+	
+	public void flushBulk(ChannelHandlerContext ctx) {
+		if (!ctx.executor().inEventLoop()) {
+			ctx.executor().execute(() -> flushBulk(ctx));
+			return;
+		}
+		while (ctx.channel().isActive() && ctx.channel().isWritable()) {
+			String msg = bulkQueue.poll();
+			if (msg == null) {
+				break;
+			}
+			ctx.writeAndFlush(msg);
+		}
+	}
+	
+	public void resume(ChannelHandlerContext ctx, List<ClientStream> streams) {
+		flushBulk(ctx);
+		for (ClientStream stream : streams) {
+			SessionRequest request;
+			while ((request = stream.acquirePending()) != null) {
+				writeToChannel(ctx, stream, request);
+			}
+		}
+	}
+	
+	public void reset(List<ClientStream> streams) {
+		inFlightMap.values().forEach(inFlight -> {
+			if (inFlight.timeout != null) {
+				inFlight.timeout.cancel(false);
+			}
+		});
+		inFlightMap.clear();
+		streams.forEach(ClientStream::reset);
+	}
+	
+	public int getBulkQueueSize() {
+		return bulkQueue.size();
+	}
+	
+	private static class InFlight {
+		final ClientStream stream;
+		volatile ScheduledFuture<?> timeout;
+		InFlight(ClientStream stream) {
+			this.stream = stream;
+		}
+	}
+
+}
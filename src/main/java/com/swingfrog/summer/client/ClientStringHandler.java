@@ -28,26 +28,22 @@ public class ClientStringHandler extends SimpleChannelInboundHandler<String> {
 	@Override
 	public void channelActive(ChannelHandlerContext ctx) throws Exception {
 		clientContext.setChannel(ctx);
+		clientContext.setConnectState(ClientContext.ConnectState.CONNECTED);
+		clientContext.resetReconnectCount();
 		ctx.writeAndFlush(String.format("rpc\t%s\t%s", ConfigMgr.get().getServerConfig().getCluster(), ConfigMgr.get().getServerConfig().getServerName()));
 		SessionRequest sessionRequest = null;
 		while ((sessionRequest = clientContext.getRequestQueue().poll()) != null) {
-			sessionRequest.setId(ClientMgr.get().incrementCurrentId());
 			ctx.writeAndFlush(sessionRequest.toJSONString());
 		}
+		clientContext.getStreamWriter().resume(ctx, clientContext.getStreams());
 	}
 	
 	@Override
 	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
 		log.warn("client connect break");
 		clientContext.setChannel(null);
-		ctx.channel().eventLoop().execute(() -> {
-			try {
-				Thread.sleep(clientContext.getConfig().getReconnectMs());
-			} catch (InterruptedException e) {
-				log.error(e.getMessage(), e);
-			}
-			clientContext.getClient().connect();
-		});
+		clientContext.getStreamWriter().reset(clientContext.getStreams());
+		clientContext.getClient().reconnect(ctx.channel().eventLoop());
 	}
 	
 	@Override
@@ -60,10 +56,9 @@ public class ClientStringHandler extends SimpleChannelInboundHandler<String> {
 			try {
 				SessionResponse response = JSON.parseObject(msg, SessionResponse.class);
 				if (response.getId() == 0) {
-					clientContext.getPushGroup().execute(()->{
-						PushDispatchMgr.get().processPush(response);
-					});
+					PushDispatchMgr.get().dispatchPush(response);
 				} else {
+					clientContext.getStreamWriter().complete(response.getId());
 					clientContext.getEventGroup().execute(()->{
 						PushDispatchMgr.get().processRemote(response);
 					});
@@ -74,6 +69,12 @@ public class ClientStringHandler extends SimpleChannelInboundHandler<String> {
 		}
 	}
 	
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+		super.channelWritabilityChanged(ctx);
+		clientContext.getStreamWriter().flushBulk(ctx);
+	}
+	
 	@Override
 	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
 			throws Exception {
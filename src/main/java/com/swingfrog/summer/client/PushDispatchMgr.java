@@ -2,25 +2,38 @@ package com.swingfrog.summer.client;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
 import java.lang.reflect.Type;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.swingfrog.summer.util.JSONConvertUtil;
+import com.swingfrog.summer.util.ThreadCountUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.swingfrog.summer.annotation.Optional;
+import com.swingfrog.summer.annotation.SingleQueue;
+import com.swingfrog.summer.concurrent.MatchGroupKey;
+import com.swingfrog.summer.concurrent.RunnableQueue;
+import com.swingfrog.summer.config.ConfigMgr;
 import com.swingfrog.summer.ioc.ContainerMgr;
 import com.swingfrog.summer.ioc.MethodParameterName;
 import com.swingfrog.summer.protocol.SessionResponse;
 
+import io.netty.util.concurrent.DefaultThreadFactory;
 import javassist.NotFoundException;
+import net.sf.cglib.reflect.FastClass;
+import net.sf.cglib.reflect.FastMethod;
 
 public class PushDispatchMgr {
 
@@ -29,6 +42,9 @@ public class PushDispatchMgr {
 	private ConcurrentHashMap<Long, SessionResponse> syncRemote;
 	private ConcurrentHashMap<Long, RemoteCallback> asyncRemote;
 	private ConcurrentHashMap<Long, Boolean> syncRemoteDiscard;
+	private ExecutorService pushExecutor;
+	private ConcurrentMap<String, RunnableQueue> laneMap;
+	private AtomicInteger pushQueueSize;
 	
 	private static class SingleCase {
 		public static final PushDispatchMgr INSTANCE = new PushDispatchMgr();
@@ -39,6 +55,8 @@ public class PushDispatchMgr {
 		syncRemote = new ConcurrentHashMap<>();
 		asyncRemote = new ConcurrentHashMap<>();
 		syncRemoteDiscard = new ConcurrentHashMap<>();
+		laneMap = new ConcurrentHashMap<>();
+		pushQueueSize = new AtomicInteger(0);
 	}
 	
 	public static PushDispatchMgr get() {
@@ -52,6 +70,93 @@ public class PushDispatchMgr {
 			log.info("client register remote {}", clazz.getSimpleName());
 			pushClassMap.put(clazz.getSimpleName(), new PushClass(clazz));
 		}
+		int pushThread = ThreadCountUtil.convert(ConfigMgr.get().getServerConfig().getClientPushThread());
+		log.info("client pushThread {}", pushThread);
+		pushExecutor = Executors.newFixedThreadPool(pushThread, new DefaultThreadFactory("ClientPush", true));
+	}
+	
+	public void shutdown() {
+		if (pushExecutor != null) {
+			pushExecutor.shutdown();
+		}
+	}
+	
+	/**
+	 * 推送按通道顺序执行, 通道默认为推送的remote名称, 可在推送方法上使用@SingleQueue指定
+	 */
+	public void dispatchPush(SessionResponse sessionResponse) {
+		String lane = getPushLane(sessionResponse);
+		RunnableQueue rq = laneMap.computeIfAbsent(lane, key -> RunnableQueue.build());
+		pushQueueSize.incrementAndGet();
+		rq.getQueue().add(() -> processPush(sessionResponse));
+		nextPush(rq);
+	}
+	
+	private void nextPush(RunnableQueue rq) {
+		if (rq.getState().compareAndSet(true, false)) {
+			Runnable runnable = rq.getQueue().poll();
+			if (runnable != null) {
+				pushExecutor.execute(() -> {
+					pushQueueSize.decrementAndGet();
+					try {
+						runnable.run();
+					} catch (Exception e) {
+						log.error(e.getMessage(), e);
+					} finally {
+						rq.getState().compareAndSet(false, true);
+						nextPush(rq);
+					}
+				});
+			} else {
+				rq.getState().compareAndSet(false, true);
+				if (!rq.getQueue().isEmpty()) {
+					nextPush(rq);
+				}
+			}
+		}
+	}
+	
+	private String getPushLane(SessionResponse sessionResponse) {
+		String push = sessionResponse.getRemote();
+		PushClass pushClass = pushClassMap.get(push);
+		if (pushClass != null) {
+			PushMethod pushMethod = pushClass.getPushMethod(sessionResponse.getMethod());
+			if (pushMethod != null && pushMethod.getLaneKey() != null) {
+				MatchGroupKey laneKey = pushMethod.getLaneKey();
+				if (laneKey.hasKeys()) {
+					JSONObject data = (JSONObject) sessionResponse.getData();
+					Object[] partKeys = new Object[laneKey.getKeys().size()];
+					for (int i = 0; i < laneKey.getKeys().size(); i++) {
+						String key = data != null ? data.getString(laneKey.getKeys().get(i)) : null;
+						partKeys[i] = key != null ? key : "";
+					}
+					return laneKey.getMainKey(partKeys);
+				}
+				return laneKey.getMainKey();
+			}
+		}
+		return push != null ? push : "";
+	}
+	
+	/**
+	 * 等待执行的推送数量
+	 */
+	public int getPushQueueSize() {
+		return pushQueueSize.get();
+	}
+	
+	/**
+	 * 各通道等待执行的推送数量
+	 */
+	public Map<String, Integer> getPushLaneQueueSizes() {
+		Map<String, Integer> map = new HashMap<>();
+		laneMap.forEach((lane, rq) -> {
+			int size = rq.getQueue().size();
+			if (size > 0) {
+				map.put(lane, size);
+			}
+		});
+		return map;
 	}
 	
 	public void processPush(SessionResponse sessionResponse) {
@@ -63,18 +168,15 @@ public class PushDispatchMgr {
 		if (pushClass != null) {
 			PushMethod pushMethod = pushClass.getPushMethod(method);
 			if (pushMethod != null) {
-				Object remoteObj = ContainerMgr.get().getDeclaredComponent(pushClass.getClazz());
-				Method remoteMod = pushMethod.getMethod();
+				Object remoteObj = pushClass.getComponent();
 				String[] params = pushMethod.getParams();
 				Type[] paramTypes = pushMethod.paramTypes();
-				Parameter[] parameters = pushMethod.getParameters();
-				boolean auto = ContainerMgr.get().isAutowiredParameter(pushClass.getClazz());
+				boolean auto = pushClass.isAutowired();
 				Object[] obj = new Object[params.length];
 				for (int i = 0; i < params.length; i++) {
 					String param = params[i];
 					Type type = paramTypes[i];
-					Parameter parameter = parameters[i];
-					if (JSONConvertUtil.containsType(type)) {
+					if (pushMethod.isConvertType(i)) {
 						obj[i] = JSONConvertUtil.convert(type, data, param);
 					} else {
 						if (data.containsKey(param)) {
@@ -97,14 +199,14 @@ public class PushDispatchMgr {
 						}
 					}
 					if (obj[i] == null) {
-						if (!parameter.isAnnotationPresent(Optional.class)) {
+						if (!pushMethod.isOptional(i)) {
 							log.error("client push[{}] method[{}] parameter[{}] error", push, method, data);
 							return;
 						}
 					}
 				}
 				try {
-					remoteMod.invoke(remoteObj, obj);
+					pushMethod.invoke(remoteObj, obj);
 				} catch (InvocationTargetException e) {
 					log.error(e.getTargetException().getMessage(), e.getTargetException());
 				} catch (Exception e) {
@@ -137,17 +239,37 @@ public class PushDispatchMgr {
 	
 	private class PushClass {
 		private Class<?> clazz;
+		private FastClass fastClass;
+		private volatile Object component;
+		private boolean autowired;
 		private Map<String, PushMethod> pushMethodMap = new HashMap<>();
 		public PushClass(Class<?> clazz) throws NotFoundException {
 			this.clazz = clazz;
+			fastClass = FastClass.create(clazz);
+			autowired = ContainerMgr.get().isAutowiredParameter(clazz);
+			MethodParameterName mpn = new MethodParameterName(clazz);
 			Method[] methods = clazz.getDeclaredMethods();
 			for (int i = 0; i < methods.length; i++) {
 				Method method = methods[i];
-				pushMethodMap.put(method.getName(), new PushMethod(method, new MethodParameterName(clazz)));
+				if (method.isSynthetic()) {
+					continue;
+				}
+				// 非public方法cglib无法生成调用, 使用反射调用
+				FastMethod fastMethod = Modifier.isPublic(method.getModifiers()) ? fastClass.getMethod(method) : null;
+				if (fastMethod == null) {
+					method.setAccessible(true);
+				}
+				pushMethodMap.put(method.getName(), new PushMethod(method, fastMethod, mpn));
 			}
 		}
-		public Class<?> getClazz() {
-			return clazz;
+		public Object getComponent() {
+			if (component == null) {
+				component = ContainerMgr.get().getDeclaredComponent(clazz);
+			}
+			return component;
+		}
+		public boolean isAutowired() {
+			return autowired;
 		}
 		public PushMethod getPushMethod(String method) {
 			return pushMethodMap.get(method);
@@ -156,17 +278,34 @@ public class PushDispatchMgr {
 	
 	private class PushMethod {
 		private Method method;
+		private FastMethod fastMethod;
 		private String[] params;
 		private Type[] paramTypes;
-		private Parameter[] parameters;
-		public PushMethod(Method method, MethodParameterName mpn) throws NotFoundException {
+		private boolean[] convertTypes;
+		private boolean[] optionals;
+		private MatchGroupKey laneKey;
+		public PushMethod(Method method, FastMethod fastMethod, MethodParameterName mpn) throws NotFoundException {
 			this.method = method;
+			this.fastMethod = fastMethod;
 			paramTypes = method.getGenericParameterTypes();
 			params = mpn.getParameterNameByMethod(method);
-			parameters = method.getParameters();
+			Parameter[] parameters = method.getParameters();
+			convertTypes = new boolean[paramTypes.length];
+			optionals = new boolean[parameters.length];
+			for (int i = 0; i < paramTypes.length; i++) {
+				convertTypes[i] = JSONConvertUtil.containsType(paramTypes[i]);
+				optionals[i] = parameters[i].isAnnotationPresent(Optional.class);
+			}
+			SingleQueue singleQueue = method.getDeclaredAnnotation(SingleQueue.class);
+			if (singleQueue != null) {
+				laneKey = new MatchGroupKey(singleQueue.value());
+			}
 		}
-		public Method getMethod() {
-			return method;
+		public Object invoke(Object obj, Object[] args) throws InvocationTargetException, IllegalAccessException {
+			if (fastMethod != null) {
+				return fastMethod.invoke(obj, args);
+			}
+			return method.invoke(obj, args);
 		}
 		public String[] getParams() {
 			return params;
@@ -174,8 +313,14 @@ public class PushDispatchMgr {
 		public Type[] paramTypes() {
 			return paramTypes;
 		}
-		public Parameter[] getParameters() {
-			return parameters;
+		public boolean isConvertType(int index) {
+			return convertTypes[index];
+		}
+		public boolean isOptional(int index) {
+			return optionals[index];
+		}
+		public MatchGroupKey getLaneKey() {
+			return laneKey;
 		}
 	}
 	
@@ -183,6 +328,10 @@ public class PushDispatchMgr {
 		asyncRemote.put(id, callback);
 	}
 	
+	public void removeAsyncRemote(long id) {
+		asyncRemote.remove(id);
+	}
+	
 	public SessionResponse getAndRemoveSyncRemote(long id) {
 		return syncRemote.remove(id);
 	}
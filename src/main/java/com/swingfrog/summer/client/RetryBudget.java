@@ -0,0 +1,53 @@
+package com.swingfrog.summer.client;
+
+import com.swingfrog.summer.config.ClientConfig;
+
+/**
+ * 重试预算, 每次请求按比例积攒重试次数, 另外每秒保底允许一定次数的重试, 两者都为0时不限制
+ */
+public class RetryBudget {
+
+	private static final double MAX_TOKENS = 100;
+	
+	private final double ratio;
+	private final int minPerSec;
+	private double tokens;
+	private long secondTime;
+	private int secondCount;
+	
+	public RetryBudget(ClientConfig config) {
+		this.ratio = config.getRetryBudgetPercent() / 100.0;
+		this.minPerSec = config.getRetryMinPerSec();
+	}
+	
+	public boolean isUnlimited() {
+		return ratio <= 0 && minPerSec <= 0;
+	}
+	
+	public synchronized void deposit() {
+		if (ratio > 0) {
+			tokens = Math.min(MAX_TOKENS, tokens + ratio);
+		}
+	}
+	
+	public synchronized boolean tryAcquire() {
+		if (isUnlimited()) {
+			return true;
+		}
+		long now = System.currentTimeMillis();
+		if (now - secondTime >= 1000) {
+			secondTime = now;
+			secondCount = 0;
+		}
+		if (secondCount < minPerSec) {
+			secondCount ++;
+			return true;
+		}
+		if (tokens >= 1) {
+			tokens -= 1;
+			return true;
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,11 @@
+package com.swingfrog.summer.client.exception;
+
+public class CircuitBreakerOpenException extends RuntimeException{
+
+	private static final long serialVersionUID = 1L;
+	
+	public CircuitBreakerOpenException(String serverName, String remote, String method) {
+		super(String.format("serverName[%s] circuit breaker open, reject remote[%s] method[%s]", serverName, remote, method));
+	}
+
+}
@@ -0,0 +1,11 @@
+package com.swingfrog.summer.client.exception;
+
+public class RequestQueueFullException extends RuntimeException{
+
+	private static final long serialVersionUID = 1L;
+	
+	public RequestQueueFullException(String serverName, String remote, String method) {
+		super(String.format("serverName[%s] request queue full, reject remote[%s] method[%s]", serverName, remote, method));
+	}
+
+}
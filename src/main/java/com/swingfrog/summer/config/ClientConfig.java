@@ -26,10 +26,38 @@ public class ClientConfig {
 	private int heartSec;
 	/**重连等待时间*/
 	private int reconnectMs;
+	/**最大重连等待时间 (重连等待时间按指数退避增长到该值, 0为默认30000)*/
+	private int reconnectMaxMs;
 	/**超时时间*/
 	private int syncRemoteTimeOutMs;
 	/**连接数量*/
 	private int connectNum;
+	/**多路复用 (开启后忽略连接数量, 所有逻辑流共用一个连接)*/
+	private boolean multiplex;
+	/**逻辑流数量*/
+	private int streamNum;
+	/**低优先级逻辑流数量*/
+	private int bulkStreamNum;
+	/**每个逻辑流的最大在途请求数 (0为不限制)*/
+	private int streamWindow;
+	/**熔断错误率百分比 (0为关闭熔断)*/
+	private int breakerErrorPercent;
+	/**慢请求时间, 超过该时间的请求计为失败 (0为不统计)*/
+	private int breakerSlowMs;
+	/**熔断统计的最近请求数 (0为默认100)*/
+	private int breakerWindow;
+	/**熔断持续时间, 结束后放行一个探测请求*/
+	private int breakerOpenMs;
+	/**对冲请求的耗时百分位, 同步请求超过该耗时后向同组另一个连接再发一次 (0为关闭, 仅用于幂等的远程调用)*/
+	private int hedgePercentile;
+	/**重试预算, 每次请求积攒的重试比例 (与每秒保底重试次数都为0时不限制)*/
+	private int retryBudgetPercent;
+	/**每秒保底重试次数*/
+	private int retryMinPerSec;
+	/**断线期间等待发送的请求队列长度 (0为不限制)*/
+	private int requestQueueSize;
+	/**请求队列满时的策略 (reject: 拒绝新请求, discardOldest: 丢弃最早的请求)*/
+	private String requestQueuePolicy;
 	
 	public String getCluster() {
 		return cluster;
@@ -103,6 +131,12 @@ public class ClientConfig {
 	public void setReconnectMs(int reconnectMs) {
 		this.reconnectMs = reconnectMs;
 	}
+	public int getReconnectMaxMs() {
+		return reconnectMaxMs;
+	}
+	public void setReconnectMaxMs(int reconnectMaxMs) {
+		this.reconnectMaxMs = reconnectMaxMs;
+	}
 	public int getSyncRemoteTimeOutMs() {
 		return syncRemoteTimeOutMs;
 	}
@@ -115,13 +149,96 @@ public class ClientConfig {
 	public void setConnectNum(int connectNum) {
 		this.connectNum = connectNum;
 	}
+	public boolean isMultiplex() {
+		return multiplex;
+	}
+	public void setMultiplex(boolean multiplex) {
+		this.multiplex = multiplex;
+	}
+	public int getStreamNum() {
+		return streamNum;
+	}
+	public void setStreamNum(int streamNum) {
+		this.streamNum = streamNum;
+	}
+	public int getBulkStreamNum() {
+		return bulkStreamNum;
+	}
+	public void setBulkStreamNum(int bulkStreamNum) {
+		this.bulkStreamNum = bulkStreamNum;
+	}
+	public int getStreamWindow() {
+		return streamWindow;
+	}
+	public void setStreamWindow(int streamWindow) {
+		this.streamWindow = streamWindow;
+	}
+	public int getBreakerErrorPercent() {
+		return breakerErrorPercent;
+	}
+	public void setBreakerErrorPercent(int breakerErrorPercent) {
+		this.breakerErrorPercent = breakerErrorPercent;
+	}
+	public int getBreakerSlowMs() {
+		return breakerSlowMs;
+	}
+	public void setBreakerSlowMs(int breakerSlowMs) {
+		this.breakerSlowMs = breakerSlowMs;
+	}
+	public int getBreakerWindow() {
+		return breakerWindow;
+	}
+	public void setBreakerWindow(int breakerWindow) {
+		this.breakerWindow = breakerWindow;
+	}
+	public int getBreakerOpenMs() {
+		return breakerOpenMs;
+	}
+	public void setBreakerOpenMs(int breakerOpenMs) {
+		this.breakerOpenMs = breakerOpenMs;
+	}
+	public int getHedgePercentile() {
+		return hedgePercentile;
+	}
+	public void setHedgePercentile(int hedgePercentile) {
+		this.hedgePercentile = hedgePercentile;
+	}
+	public int getRetryBudgetPercent() {
+		return retryBudgetPercent;
+	}
+	public void setRetryBudgetPercent(int retryBudgetPercent) {
+		this.retryBudgetPercent = retryBudgetPercent;
+	}
+	public int getRetryMinPerSec() {
+		return retryMinPerSec;
+	}
+	public void setRetryMinPerSec(int retryMinPerSec) {
+		this.retryMinPerSec = retryMinPerSec;
+	}
+	public int getRequestQueueSize() {
+		return requestQueueSize;
+	}
+	public void setRequestQueueSize(int requestQueueSize) {
+		this.requestQueueSize = requestQueueSize;
+	}
+	public String getRequestQueuePolicy() {
+		return requestQueuePolicy;
+	}
+	public void setRequestQueuePolicy(String requestQueuePolicy) {
+		this.requestQueuePolicy = requestQueuePolicy;
+	}
 	@Override
 	public String toString() {
 		return "ClientConfig [cluster=" + cluster + ", serverName=" + serverName + ", address=" + address + ", port="
 				+ port + ", protocol=" + protocol + ", charset=" + charset + ", password=" + password
 				+ ", workerThread=" + workerThread + ", eventThread=" + eventThread + ", msgLength=" + msgLength
-				+ ", heartSec=" + heartSec + ", reconnectMs=" + reconnectMs + ", syncRemoteTimeOutMs="
-				+ syncRemoteTimeOutMs + ", connectNum=" + connectNum + "]";
+				+ ", heartSec=" + heartSec + ", reconnectMs=" + reconnectMs + ", reconnectMaxMs=" + reconnectMaxMs + ", syncRemoteTimeOutMs="
+				+ syncRemoteTimeOutMs + ", connectNum=" + connectNum + ", multiplex=" + multiplex + ", streamNum="
+				+ streamNum + ", bulkStreamNum=" + bulkStreamNum + ", streamWindow=" + streamWindow
+				+ ", breakerErrorPercent=" + breakerErrorPercent + ", breakerSlowMs=" + breakerSlowMs + ", breakerWindow="
+				+ breakerWindow + ", breakerOpenMs=" + breakerOpenMs + ", hedgePercentile=" + hedgePercentile
+				+ ", retryBudgetPercent=" + retryBudgetPercent + ", retryMinPerSec=" + retryMinPerSec
+				+ ", requestQueueSize=" + requestQueueSize + ", requestQueuePolicy=" + requestQueuePolicy + "]";
 	}
 	
 }
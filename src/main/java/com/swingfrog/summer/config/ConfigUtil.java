@@ -31,7 +31,11 @@ public class ConfigUtil {
         }
         try {
             for (int i = 0; i < destFields.length; i++) {
-                destMethods[i].invoke(dest, (Object)getValueByTypeAndString(destFields[i].getType(), pro.getProperty(prefix + destFields[i].getName())));
+                String value = pro.getProperty(prefix + destFields[i].getName());
+                if (value == null) {
+                    continue;
+                }
+                destMethods[i].invoke(dest, (Object)getValueByTypeAndString(destFields[i].getType(), value));
             }
         } catch (IllegalAccessException e) {
             log.error(e.getMessage(), e);
@@ -36,6 +36,8 @@ public class ServerConfig {
 	private String[] allowAddressList;
 	/**使用主端口的线程池 (监听线程池, 读写线程池, 业务线程池)*/
 	private boolean useMainServerThreadPool;
+	/**连接其他服务器时处理推送的线程数 (所有连接共用)*/
+	private int clientPushThread;
 	
 	public String getCluster() {
 		return cluster;
@@ -133,6 +135,12 @@ public class ServerConfig {
 	public void setUseMainServerThreadPool(boolean useMainServerThreadPool) {
 		this.useMainServerThreadPool = useMainServerThreadPool;
 	}
+	public int getClientPushThread() {
+		return clientPushThread;
+	}
+	public void setClientPushThread(int clientPushThread) {
+		this.clientPushThread = clientPushThread;
+	}
 
 	@Override
 	public String toString() {
@@ -153,6 +161,7 @@ public class ServerConfig {
 				", allowAddressEnable=" + allowAddressEnable +
 				", allowAddressList=" + Arrays.toString(allowAddressList) +
 				", useMainServerThreadPool=" + useMainServerThreadPool +
+				", clientPushThread=" + clientPushThread +
 				'}';
 	}
 
@@ -3,12 +3,18 @@ package com.swingfrog.summer.db;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.apache.commons.dbutils.QueryRunner;
 import org.apache.commons.dbutils.ResultSetHandler;
+import org.apache.commons.dbutils.RowProcessor;
 import org.apache.commons.dbutils.handlers.BeanHandler;
 import org.apache.commons.dbutils.handlers.BeanListHandler;
 import org.apache.commons.dbutils.handlers.ColumnListHandler;
@@ -52,11 +58,38 @@ public abstract class BaseDao<T> {
 		return null;
 	}
 
+	/**
+	 * 当前操作使用的数据源, 默认为topic(), 分表的仓库按当前操作的分表路由
+	 */
+	protected String currentTopic() {
+		return topic();
+	}
+
+	/**
+	 * 配置了从库时读操作是否走从库, 需要读到最新数据的dao可以关闭
+	 */
+	protected boolean readFromReplica() {
+		return true;
+	}
+
 	private Connection getConnection() throws SQLException {
-		if (topic() == null) {
+		String topic = currentTopic();
+		if (topic == null) {
 			return DataBaseMgr.get().getConnection();
 		}
-		return DataBaseMgr.get().getConnection(topic());
+		return DataBaseMgr.get().getConnection(topic);
+	}
+
+	private Connection getWriteConnection() throws SQLException {
+		DataBaseMgr.get().recordWrite(currentTopic());
+		return getConnection();
+	}
+
+	private Connection getReadConnection() throws SQLException {
+		if (!readFromReplica()) {
+			return getConnection();
+		}
+		return DataBaseMgr.get().getReadConnection(currentTopic());
 	}
 	
 	protected int update(String sql, Object... args) {
@@ -64,7 +97,7 @@ public abstract class BaseDao<T> {
 			log.debug("{}  {}", sql, args);
 		int i = 0;
 		try {
-			i = queryRunner.update(getConnection(), sql, args);
+			i = queryRunner.update(getWriteConnection(), sql, args);
 		} catch (SQLException e) {
 			log.error(e.getMessage(), e);
 		} finally {
@@ -84,7 +117,7 @@ public abstract class BaseDao<T> {
 			}
 		}
 		try {
-			return queryRunner.batch(getConnection(), sql, args);
+			return queryRunner.batch(getWriteConnection(), sql, args);
 		} catch (SQLException e) {
 			log.error(e.getMessage(), e);
 		} finally {
@@ -97,11 +130,109 @@ public abstract class BaseDao<T> {
 		return null;
 	}
 	
+	/**
+	 * 在同一个连接的事务中执行, 失败时回滚并返回false, 已处于事务中时直接加入外层事务
+	 * 事务中使用了多个数据源时依次提交, 不保证跨数据源的原子性
+	 */
+	protected boolean transaction(Runnable runnable) {
+		DataBaseMgr dataBaseMgr = DataBaseMgr.get();
+		if (dataBaseMgr.isTransaction()) {
+			runnable.run();
+			return true;
+		}
+		boolean keepConnection = dataBaseMgr.isDiscardConnectionLevelForService();
+		dataBaseMgr.openTransaction();
+		dataBaseMgr.setDiscardConnectionLevelForService();
+		Connection conn = null;
+		try {
+			conn = getWriteConnection();
+			conn.setAutoCommit(false);
+			runnable.run();
+			dataBaseMgr.commitTransaction();
+			return true;
+		} catch (Throwable e) {
+			log.error(e.getMessage(), e);
+			if (conn != null) {
+				try {
+					dataBaseMgr.rollbackTransaction();
+				} catch (SQLException ex) {
+					log.error(ex.getMessage(), ex);
+				}
+			}
+		} finally {
+			dataBaseMgr.closeTransaction();
+			try {
+				if (conn != null) {
+					dataBaseMgr.resetAutoCommit();
+				}
+				if (!keepConnection) {
+					dataBaseMgr.discardConnectionFromService();
+				}
+			} catch (SQLException e) {
+				log.error(e.getMessage(), e);
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * 在同一个连接中执行多次数据库操作, 结束后归还连接, 连接上缓存的预编译语句可以被重复使用, 可以嵌套
+	 */
+	protected void unitOfWork(Runnable runnable) {
+		DataBaseMgr dataBaseMgr = DataBaseMgr.get();
+		dataBaseMgr.openUnitOfWork();
+		try {
+			runnable.run();
+		} finally {
+			try {
+				dataBaseMgr.closeUnitOfWork();
+			} catch (SQLException e) {
+				log.error(e.getMessage(), e);
+			}
+		}
+	}
+	
+	/**
+	 * 在数据源的异步线程池中执行, 不阻塞调用线程, 其中的多次操作在同一个工作单元中共用连接
+	 * future在数据库线程中完成, 后续处理需要回到业务线程时使用thenXxxAsync并指定executor
+	 */
+	protected <R> CompletableFuture<R> async(Supplier<R> supplier) {
+		return async(currentTopic(), supplier);
+	}
+	
+	/**
+	 * 在topic数据源的异步线程池中执行, 操作的数据源在执行时才能确定的(如分表)由调用方指定
+	 */
+	protected <R> CompletableFuture<R> async(String topic, Supplier<R> supplier) {
+		return DataBaseMgr.get().getExecutor(topic).submit(() -> inUnitOfWork(supplier));
+	}
+	
+	/**
+	 * 异步写入, 只在排队时超时, 开始执行后future以实际结果结束
+	 */
+	protected <R> CompletableFuture<R> asyncWrite(String topic, Supplier<R> supplier) {
+		return DataBaseMgr.get().getExecutor(topic).submitWrite(() -> inUnitOfWork(supplier));
+	}
+	
+	private <R> R inUnitOfWork(Supplier<R> supplier) {
+		DataBaseMgr dataBaseMgr = DataBaseMgr.get();
+		dataBaseMgr.openUnitOfWork();
+		try {
+			return supplier.get();
+		} finally {
+			try {
+				dataBaseMgr.closeUnitOfWork();
+			} catch (SQLException e) {
+				log.error(e.getMessage(), e);
+			}
+		}
+	}
+	
 	protected Long insertAndGetGeneratedKeys(String sql, Object... args) {
 		if (log.isDebugEnabled())
 			log.debug("{}  {}", sql, args);
 		try {
-			return queryRunner.insert(getConnection(), sql, new ScalarHandler<Long>(), args);
+			return queryRunner.insert(getWriteConnection(), sql, new ScalarHandler<Long>(), args);
 		} catch (SQLException e) {
 			log.error(e.getMessage(), e);
 		} finally {
@@ -122,7 +253,7 @@ public abstract class BaseDao<T> {
 		if (log.isDebugEnabled())
 			log.debug("{}  {}", sql, args);
 		try {
-			return queryRunner.query(getConnection(), sql, rsh, args);
+			return queryRunner.query(getReadConnection(), sql, rsh, args);
 		} catch (SQLException e) {
 			log.error(e.getMessage(), e);
 		} finally {
@@ -143,7 +274,7 @@ public abstract class BaseDao<T> {
 		if (log.isDebugEnabled())
 			log.debug("{}  {}", sql, args);
 		try {
-			return queryRunner.query(getConnection(), sql, rsh, args);
+			return queryRunner.query(getReadConnection(), sql, rsh, args);
 		} catch (SQLException e) {
 			log.error(e.getMessage(), e);
 		} finally {
@@ -156,11 +287,41 @@ public abstract class BaseDao<T> {
 		return null;
 	}
 
+	/**
+	 * 流式查询, 使用只进游标逐行处理结果 (MySQL fetchSize为Integer.MIN_VALUE), 不把整个结果集加载到内存
+	 * 处理过程中不能在当前线程执行其他查询, 返回处理的行数, 失败返回-1
+	 */
+	protected long streamBean(String sql, RowProcessor rowProcessor, Consumer<T> consumer, Object... args) {
+		if (log.isDebugEnabled())
+			log.debug("{}  {}", sql, args);
+		try (PreparedStatement stmt = getReadConnection().prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+			stmt.setFetchSize(Integer.MIN_VALUE);
+			queryRunner.fillStatement(stmt, args);
+			long count = 0;
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+					consumer.accept(rowProcessor.toBean(rs, clazz));
+					count ++;
+				}
+			}
+			return count;
+		} catch (SQLException e) {
+			log.error(e.getMessage(), e);
+		} finally {
+			try {
+				DataBaseMgr.get().discardConnectionFromDao();
+			} catch (SQLException e) {
+				log.error(e.getMessage(), e);
+			}
+		}
+		return -1;
+	}
+
 	protected <E> E getValue(String sql, Object... args) {
 		if (log.isDebugEnabled())
 			log.debug("{}  {}", sql, args);
 		try {
-			return queryRunner.query(getConnection(), sql, new ScalarHandler<>(), args);
+			return queryRunner.query(getReadConnection(), sql, new ScalarHandler<>(), args);
 		} catch (SQLException e) {
 			log.error(e.getMessage(), e);
 		} finally {
@@ -177,7 +338,7 @@ public abstract class BaseDao<T> {
 		if (log.isDebugEnabled())
 			log.debug("{}  {}", sql, args);
 		try {
-			return queryRunner.query(getConnection(), sql, new ColumnListHandler<>(), args);
+			return queryRunner.query(getReadConnection(), sql, new ColumnListHandler<>(), args);
 		} catch (SQLException e) {
 			log.error(e.getMessage(), e);
 		} finally {
@@ -194,7 +355,7 @@ public abstract class BaseDao<T> {
 		if (log.isDebugEnabled())
 			log.debug("{}  {}", sql, args);
 		try {
-			return queryRunner.query(getConnection(), sql, new MapHandler(), args);
+			return queryRunner.query(getReadConnection(), sql, new MapHandler(), args);
 		} catch (SQLException e) {
 			log.error(e.getMessage(), e);
 		} finally {
@@ -211,7 +372,7 @@ public abstract class BaseDao<T> {
 		if (log.isDebugEnabled())
 			log.debug("{}  {}", sql, args);
 		try {
-			return queryRunner.query(getConnection(), sql, new MapListHandler(), args);
+			return queryRunner.query(getReadConnection(), sql, new MapListHandler(), args);
 		} catch (SQLException e) {
 			log.error(e.getMessage(), e);
 		} finally {
@@ -228,7 +389,7 @@ public abstract class BaseDao<T> {
 		if (log.isDebugEnabled())
 			log.debug("{}  {}", sql, args);
 		try {
-			return queryRunner.query(getConnection(), sql, new BeanHandler<>(clazz), args);
+			return queryRunner.query(getReadConnection(), sql, new BeanHandler<>(clazz), args);
 		} catch (SQLException e) {
 			log.error(e.getMessage(), e);
 		} finally {
@@ -245,7 +406,7 @@ public abstract class BaseDao<T> {
 		if (log.isDebugEnabled())
 			log.debug("{}  {}", sql, args);
 		try {
-			return queryRunner.query(getConnection(), sql, new BeanListHandler<>(clazz), args);
+			return queryRunner.query(getReadConnection(), sql, new BeanListHandler<>(clazz), args);
 		} catch (SQLException e) {
 			log.error(e.getMessage(), e);
 		} finally {
@@ -0,0 +1,141 @@
+package com.swingfrog.summer.db;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * 一个数据源的异步数据库操作线程池, 队列有上限, 队列满时返回的future以RejectedExecutionException结束
+ * 超过timeoutMs未完成的以TimeoutException结束, 还在排队的任务不再执行
+ * 写入任务(submitWrite)只在排队时超时, 开始执行后等待实际结果, 避免报告超时而写入仍然提交
+ */
+public class DataBaseExecutor {
+
+	private final String name;
+	private final long timeoutMs;
+	private final ThreadPoolExecutor executor;
+	private final ScheduledExecutorService timeoutExecutor;
+	private final LongAdder submitCount = new LongAdder();
+	private final LongAdder completeCount = new LongAdder();
+	private final LongAdder failureCount = new LongAdder();
+	private final LongAdder rejectCount = new LongAdder();
+	private final LongAdder timeoutCount = new LongAdder();
+	private final LongAdder startCount = new LongAdder();
+	private final LongAdder waitTime = new LongAdder();
+	
+	DataBaseExecutor(String name, int thread, int queueSize, long timeoutMs, ScheduledExecutorService timeoutExecutor) {
+		this.name = name;
+		this.timeoutMs = timeoutMs;
+		this.timeoutExecutor = timeoutExecutor;
+		executor = new ThreadPoolExecutor(thread, thread, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(queueSize),
+				new DefaultThreadFactory("DataBaseExecutor_" + name, true));
+	}
+	
+	public <R> CompletableFuture<R> submit(Supplier<R> supplier) {
+		return submit(supplier, false);
+	}
+	
+	public <R> CompletableFuture<R> submitWrite(Supplier<R> supplier) {
+		return submit(supplier, true);
+	}
+	
+	private <R> CompletableFuture<R> submit(Supplier<R> supplier, boolean write) {
+		CompletableFuture<R> future = new CompletableFuture<>();
+		AtomicBoolean started = new AtomicBoolean(false);
+		long submitTime = System.nanoTime();
+		try {
+			executor.execute(() -> {
+				startCount.increment();
+				waitTime.add(System.nanoTime() - submitTime);
+				if (!started.compareAndSet(false, true) || future.isDone()) {
+					return;
+				}
+				try {
+					future.complete(supplier.get());
+					completeCount.increment();
+				} catch (Throwable e) {
+					failureCount.increment();
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			rejectCount.increment();
+			future.completeExceptionally(e);
+			return future;
+		}
+		submitCount.increment();
+		if (timeoutMs > 0) {
+			ScheduledFuture<?> timeout = timeoutExecutor.schedule(() -> {
+				if (write && !started.compareAndSet(false, true)) {
+					return;
+				}
+				if (future.completeExceptionally(new TimeoutException(String.format("data base executor[%s] timeout %sms", name, timeoutMs)))) {
+					timeoutCount.increment();
+				}
+			}, timeoutMs, TimeUnit.MILLISECONDS);
+			future.whenComplete((r, e) -> timeout.cancel(false));
+		}
+		return future;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public int getThread() {
+		return executor.getMaximumPoolSize();
+	}
+	
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+	
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+	
+	public long getSubmitCount() {
+		return submitCount.sum();
+	}
+	
+	public long getCompleteCount() {
+		return completeCount.sum();
+	}
+	
+	public long getFailureCount() {
+		return failureCount.sum();
+	}
+	
+	public long getRejectCount() {
+		return rejectCount.sum();
+	}
+	
+	public long getTimeoutCount() {
+		return timeoutCount.sum();
+	}
+	
+	/**
+	 * 任务的平均排队时间(毫秒)
+	 */
+	public double getAverageWaitMs() {
+		long count = startCount.sum();
+		return count == 0 ? 0 : waitTime.sum() / 1_000_000.0 / count;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("DataBaseExecutor{name=%s, thread=%s, active=%s, queue=%s, submit=%s, complete=%s, failure=%s, reject=%s, timeout=%s, averageWaitMs=%.2f}",
+				name, getThread(), getActiveCount(), getQueueSize(), getSubmitCount(), getCompleteCount(), getFailureCount(), getRejectCount(), getTimeoutCount(), getAverageWaitMs());
+	}
+
+}
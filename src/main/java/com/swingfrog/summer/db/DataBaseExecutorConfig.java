@@ -0,0 +1,33 @@
+package com.swingfrog.summer.db;
+
+public class DataBaseExecutorConfig {
+
+	private int thread;
+	private int queueSize;
+	private long timeoutMs = -1;
+	
+	public int getThread() {
+		return thread;
+	}
+	
+	public void setThread(int thread) {
+		this.thread = thread;
+	}
+	
+	public int getQueueSize() {
+		return queueSize;
+	}
+	
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+	
+	public long getTimeoutMs() {
+		return timeoutMs;
+	}
+	
+	public void setTimeoutMs(long timeoutMs) {
+		this.timeoutMs = timeoutMs;
+	}
+
+}
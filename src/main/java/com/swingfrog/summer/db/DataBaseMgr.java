@@ -3,21 +3,51 @@ package com.swingfrog.summer.db;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.alibaba.druid.pool.DruidDataSource;
 import com.alibaba.druid.pool.DruidDataSourceFactory;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.swingfrog.summer.config.ConfigUtil;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
 
 public class DataBaseMgr {
 
+	private static final Logger log = LoggerFactory.getLogger(DataBaseMgr.class);
+
+	private static final int DEFAULT_STATEMENT_CACHE_SIZE = 200;
+	private static final long DEFAULT_REPLICA_STICKY_MS = 1000;
+	private static final long DEFAULT_REPLICA_CHECK_MS = 5000;
+	private static final String PRIMARY = "";
+	private static final int DEFAULT_EXECUTOR_QUEUE_SIZE = 10000;
+	private static final long DEFAULT_EXECUTOR_TIMEOUT_MS = 10000;
+
 	private DruidDataSource dataSource;
 	private Map<String, DruidDataSource> otherDataSourceMap = Maps.newHashMap();
+	private final ReplicaConfig replicaConfig = new ReplicaConfig();
+	private final ConcurrentMap<String, List<ReplicaDataSource>> replicaMap = Maps.newConcurrentMap();
+	private volatile ScheduledExecutorService replicaChecker;
+	private final DataBaseExecutorConfig executorConfig = new DataBaseExecutorConfig();
+	private final ConcurrentMap<String, DataBaseExecutor> executorMap = Maps.newConcurrentMap();
+	private volatile ScheduledExecutorService executorTimeout;
 	private ThreadLocal<ConnInfo> local = new ThreadLocal<ConnInfo>() {
 		protected ConnInfo initialValue() {
 			return new ConnInfo();
@@ -43,7 +73,21 @@ public class DataBaseMgr {
 	public void loadConfig(InputStream in) throws Exception {
 		Properties properties = new Properties();
 		properties.load(in);
-		dataSource = (DruidDataSource) DruidDataSourceFactory.createDataSource(properties);
+		ConfigUtil.loadDataWithBean(properties, "replica.", replicaConfig);
+		if (replicaConfig.getStickyMs() < 0) {
+			replicaConfig.setStickyMs(DEFAULT_REPLICA_STICKY_MS);
+		}
+		if (replicaConfig.getCheckMs() <= 0) {
+			replicaConfig.setCheckMs(DEFAULT_REPLICA_CHECK_MS);
+		}
+		ConfigUtil.loadDataWithBean(properties, "executor.", executorConfig);
+		if (executorConfig.getQueueSize() <= 0) {
+			executorConfig.setQueueSize(DEFAULT_EXECUTOR_QUEUE_SIZE);
+		}
+		if (executorConfig.getTimeoutMs() < 0) {
+			executorConfig.setTimeoutMs(DEFAULT_EXECUTOR_TIMEOUT_MS);
+		}
+		dataSource = createDataSource(properties);
 	}
 
 	public void loadConfigForOther(String topic, String path) throws Exception {
@@ -54,7 +98,98 @@ public class DataBaseMgr {
 		Objects.requireNonNull(topic, "topic not null");
 		Properties properties = new Properties();
 		properties.load(in);
-		otherDataSourceMap.put(topic, (DruidDataSource) DruidDataSourceFactory.createDataSource(properties));
+		otherDataSourceMap.put(topic, createDataSource(properties));
+	}
+
+	/**
+	 * 主库的从库, 每个从库一个配置文件, replica.weight为权重
+	 */
+	public void loadReplicaConfig(String path) throws Exception {
+		loadReplicaConfig(new FileInputStream(path));
+	}
+	
+	public void loadReplicaConfig(InputStream in) throws Exception {
+		addReplica(PRIMARY, in);
+	}
+	
+	public void loadReplicaConfigForOther(String topic, String path) throws Exception {
+		loadReplicaConfigForOther(topic, new FileInputStream(path));
+	}
+	
+	public void loadReplicaConfigForOther(String topic, InputStream in) throws Exception {
+		Objects.requireNonNull(topic, "topic not null");
+		addReplica(topic, in);
+	}
+	
+	private void addReplica(String key, InputStream in) throws Exception {
+		Properties properties = new Properties();
+		properties.load(in);
+		ReplicaConfig config = new ReplicaConfig();
+		ConfigUtil.loadDataWithBean(properties, "replica.", config);
+		DruidDataSource replica = createDataSource(properties);
+		replicaMap.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(new ReplicaDataSource(replica, Math.max(1, config.getWeight())));
+		startReplicaChecker();
+	}
+	
+	private synchronized void startReplicaChecker() {
+		if (replicaChecker != null) {
+			return;
+		}
+		replicaChecker = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("DataBaseReplicaCheck", true));
+		long checkMs = getReplicaCheckMs();
+		replicaChecker.scheduleWithFixedDelay(this::checkReplica, checkMs, checkMs, TimeUnit.MILLISECONDS);
+	}
+	
+	private long getReplicaCheckMs() {
+		return replicaConfig.getCheckMs() > 0 ? replicaConfig.getCheckMs() : DEFAULT_REPLICA_CHECK_MS;
+	}
+	
+	private void checkReplica() {
+		replicaMap.values().forEach(replicas -> replicas.forEach(this::checkReplica));
+	}
+	
+	/**
+	 * 执行SELECT 1, 配置了replica.maxLagSeconds时复制延迟超过该值或复制中断也视为不可用
+	 */
+	private void checkReplica(ReplicaDataSource replica) {
+		boolean healthy;
+		try (Connection conn = replica.getDataSource().getConnection(getReplicaCheckMs());
+			 Statement stmt = conn.createStatement()) {
+			stmt.execute("SELECT 1");
+			healthy = true;
+			if (replicaConfig.getMaxLagSeconds() > 0) {
+				try (ResultSet rs = stmt.executeQuery("SHOW SLAVE STATUS")) {
+					if (rs.next()) {
+						long lag = rs.getLong("Seconds_Behind_Master");
+						healthy = !rs.wasNull() && lag <= replicaConfig.getMaxLagSeconds();
+					}
+				}
+			}
+		} catch (Exception e) {
+			log.warn("replica check failure {} - {}", replica.getName(), e.getMessage());
+			healthy = false;
+		}
+		if (replica.setHealthy(healthy)) {
+			log.info("replica {} {}", replica.getName(), healthy ? "available" : "unavailable");
+		}
+	}
+
+	/**
+	 * 未配置时默认开启预编译语句缓存 (每个物理连接按sql缓存), 并使用服务端预编译
+	 */
+	/**
+	 * 预编译语句缓存需要在配置中开启poolPreparedStatements, 未配置缓存数量时为200, 连接参数以配置的url为准
+	 */
+	private DruidDataSource createDataSource(Properties properties) throws Exception {
+		DruidDataSource dataSource = (DruidDataSource) DruidDataSourceFactory.createDataSource(properties);
+		// DruidDataSourceFactory只读取maxOpenPreparedStatements, 这里补上maxPoolPreparedStatementPerConnectionSize
+		if (dataSource.isPoolPreparedStatements() && !properties.containsKey("maxOpenPreparedStatements")) {
+			String size = properties.getProperty("maxPoolPreparedStatementPerConnectionSize");
+			dataSource.setMaxPoolPreparedStatementPerConnectionSize(size == null ? DEFAULT_STATEMENT_CACHE_SIZE : Integer.parseInt(size.trim()));
+		}
+		log.info("data source {} poolPreparedStatements[{}] maxPoolPreparedStatementPerConnectionSize[{}]", dataSource.getUrl(),
+				dataSource.isPoolPreparedStatements(), dataSource.getMaxPoolPreparedStatementPerConnectionSize());
+		return dataSource;
 	}
 	
 	public Connection getConnection() throws SQLException {
@@ -87,6 +222,72 @@ public class DataBaseMgr {
 		return conn;
 	}
 	
+	/**
+	 * 读连接, 以下情况使用主库: 没有可用的从库, 事务中, 当前线程已经持有主库连接, 当前线程最近replica.stickyMs内写过该库
+	 * 其余情况按权重随机选择一个健康的从库, 同一线程在释放连接前固定使用该从库
+	 */
+	public Connection getReadConnection(String topic) throws SQLException {
+		String key = topic == null ? PRIMARY : topic;
+		ConnInfo info = local.get();
+		List<ReplicaDataSource> replicas = replicaMap.get(key);
+		boolean primary = replicas == null
+				|| info.isTransaction()
+				|| (topic == null ? info.getConn() != null : info.getOtherConn(topic) != null)
+				|| System.currentTimeMillis() - info.getWriteTime(key) < (replicaConfig.getStickyMs() >= 0 ? replicaConfig.getStickyMs() : DEFAULT_REPLICA_STICKY_MS);
+		if (!primary) {
+			Connection conn = info.getReplicaConn(key);
+			if (conn != null) {
+				return conn;
+			}
+			ReplicaDataSource replica = selectReplica(replicas);
+			if (replica != null) {
+				try {
+					conn = replica.getDataSource().getConnection();
+					info.putReplicaConn(key, conn);
+					return conn;
+				} catch (SQLException e) {
+					log.warn("replica connection failure {} - {}", replica.getName(), e.getMessage());
+					if (replica.setHealthy(false)) {
+						log.info("replica {} unavailable", replica.getName());
+					}
+				}
+			}
+		}
+		return topic == null ? getConnection() : getConnection(topic);
+	}
+	
+	private static ReplicaDataSource selectReplica(List<ReplicaDataSource> replicas) {
+		int total = 0;
+		for (ReplicaDataSource replica : replicas) {
+			if (replica.isHealthy()) {
+				total += replica.getWeight();
+			}
+		}
+		if (total == 0) {
+			return null;
+		}
+		int random = ThreadLocalRandom.current().nextInt(total);
+		for (ReplicaDataSource replica : replicas) {
+			if (replica.isHealthy()) {
+				random -= replica.getWeight();
+				if (random < 0) {
+					return replica;
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * 记录当前线程写过该库, 之后一段时间内的读走主库, 避免读到复制延迟前的旧数据
+	 */
+	public void recordWrite(String topic) {
+		String key = topic == null ? PRIMARY : topic;
+		if (replicaMap.containsKey(key)) {
+			local.get().setWriteTime(key, System.currentTimeMillis());
+		}
+	}
+	
 	private void discardConnection() throws SQLException {
 		Connection conn = local.get().getConn();
 		if (conn != null) {
@@ -97,29 +298,171 @@ public class DataBaseMgr {
 			otherConn.setAutoCommit(true);
 			otherConn.close();
 		}
+		for (Connection replicaConn : local.get().listReplicaConn()) {
+			replicaConn.close();
+		}
 		local.get().dispose();
 	}
 	
 	public void discardConnectionFromDao() throws SQLException {
-		if (!local.get().isRemoteDiscard() && !local.get().isServiceDiscard()) {
+		if (!local.get().isRemoteDiscard() && !local.get().isServiceDiscard() && local.get().getUnitOfWork() == 0) {
 			discardConnection();
 		}
 	}
 	
 	public void discardConnectionFromService() throws SQLException {
-		if (!local.get().isRemoteDiscard()) {
+		if (!local.get().isRemoteDiscard() && local.get().getUnitOfWork() == 0) {
 			discardConnection();
 		}
 	}
 	
 	public void discardConnectionFromRemote() throws SQLException {
+		local.get().setUnitOfWork(0);
 		discardConnection();
 	}
 
+	/**
+	 * 开启工作单元, 直到对应的closeUnitOfWork前当前线程的数据库操作共用同一个连接, 可以嵌套
+	 */
+	public void openUnitOfWork() {
+		local.get().setUnitOfWork(local.get().getUnitOfWork() + 1);
+	}
+	
+	/**
+	 * 最外层的工作单元结束时归还连接, 处于事务或service/remote持有连接的范围内时连接由外层归还
+	 */
+	public void closeUnitOfWork() throws SQLException {
+		ConnInfo info = local.get();
+		info.setUnitOfWork(Math.max(0, info.getUnitOfWork() - 1));
+		if (info.getUnitOfWork() == 0 && !info.isTransaction()) {
+			discardConnectionFromDao();
+		}
+	}
+	
+	public boolean isUnitOfWork() {
+		return local.get().getUnitOfWork() > 0;
+	}
+	
+	/**
+	 * 数据源的异步操作线程池, 线程数默认为连接池的maxActive
+	 */
+	public DataBaseExecutor getExecutor(String topic) {
+		String key = topic == null ? PRIMARY : topic;
+		DataBaseExecutor executor = executorMap.get(key);
+		if (executor != null) {
+			return executor;
+		}
+		DruidDataSource source = topic == null ? dataSource : otherDataSourceMap.get(topic);
+		if (source == null) {
+			throw new RuntimeException(String.format("not found data source for the topic[%s]", topic));
+		}
+		return executorMap.computeIfAbsent(key, k -> {
+			int thread = executorConfig.getThread() > 0 ? executorConfig.getThread() : source.getMaxActive();
+			int queueSize = executorConfig.getQueueSize() > 0 ? executorConfig.getQueueSize() : DEFAULT_EXECUTOR_QUEUE_SIZE;
+			long timeoutMs = executorConfig.getTimeoutMs() >= 0 ? executorConfig.getTimeoutMs() : DEFAULT_EXECUTOR_TIMEOUT_MS;
+			return new DataBaseExecutor(topic == null ? "primary" : topic, thread, queueSize, timeoutMs, getExecutorTimeout());
+		});
+	}
+	
+	public Collection<DataBaseExecutor> listExecutor() {
+		return executorMap.values();
+	}
+	
+	private ScheduledExecutorService getExecutorTimeout() {
+		if (executorTimeout == null) {
+			synchronized (this) {
+				if (executorTimeout == null) {
+					executorTimeout = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("DataBaseExecutorTimeout", true));
+				}
+			}
+		}
+		return executorTimeout;
+	}
+	
+	/**
+	 * 预编译语句缓存的统计, 所有数据源合计
+	 */
+	public StatementCacheStats getStatementCacheStats() {
+		StatementCacheStats stats = getStatementCacheStats(dataSource);
+		for (DruidDataSource other : otherDataSourceMap.values()) {
+			stats = stats.plus(getStatementCacheStats(other));
+		}
+		return stats;
+	}
+	
+	public StatementCacheStats getStatementCacheStats(String topic) {
+		if (!otherDataSourceMap.containsKey(topic)) {
+			throw new RuntimeException(String.format("not found data source for the topic[%s]", topic));
+		}
+		return getStatementCacheStats(otherDataSourceMap.get(topic));
+	}
+	
+	private static StatementCacheStats getStatementCacheStats(DruidDataSource dataSource) {
+		if (dataSource == null) {
+			return new StatementCacheStats(0, 0, 0, 0);
+		}
+		return new StatementCacheStats(dataSource.getCachedPreparedStatementHitCount(), dataSource.getCachedPreparedStatementMissCount(),
+				dataSource.getCachedPreparedStatementCount(), dataSource.getPreparedStatementCount());
+	}
+
 	public void openTransaction() {
 		local.get().setTransaction(true);
 	}
 	
+	public void closeTransaction() {
+		local.get().setTransaction(false);
+	}
+	
+	public boolean isTransaction() {
+		return local.get().isTransaction();
+	}
+	
+	/**
+	 * 提交当前线程持有的所有未自动提交的连接, 多个数据源依次提交
+	 */
+	public void commitTransaction() throws SQLException {
+		for (Connection conn : listHeldConnection()) {
+			if (!conn.getAutoCommit()) {
+				conn.commit();
+			}
+		}
+	}
+	
+	public void rollbackTransaction() throws SQLException {
+		SQLException exception = null;
+		for (Connection conn : listHeldConnection()) {
+			try {
+				if (!conn.getAutoCommit()) {
+					conn.rollback();
+				}
+			} catch (SQLException e) {
+				exception = e;
+			}
+		}
+		if (exception != null) {
+			throw exception;
+		}
+	}
+	
+	public void resetAutoCommit() throws SQLException {
+		for (Connection conn : listHeldConnection()) {
+			conn.setAutoCommit(true);
+		}
+	}
+	
+	private List<Connection> listHeldConnection() {
+		List<Connection> list = Lists.newArrayList();
+		if (local.get().getConn() != null) {
+			list.add(local.get().getConn());
+		}
+		list.addAll(local.get().listOtherConn());
+		return list;
+	}
+	
+	public boolean isDiscardConnectionLevelForService() {
+		return local.get().isServiceDiscard() || local.get().isRemoteDiscard() || local.get().getUnitOfWork() > 0;
+	}
+	
 	public void setDiscardConnectionLevelForService() {
 		local.get().setServiceDiscard(true);
 	}
@@ -133,7 +476,10 @@ public class DataBaseMgr {
 		private boolean remoteDiscard;
 		private Connection conn;
 		private ConcurrentMap<String, Connection> otherConnMap = Maps.newConcurrentMap();
+		private Map<String, Connection> replicaConnMap = Maps.newHashMap();
+		private Map<String, Long> writeTimeMap = Maps.newHashMap();
 		private boolean transaction;
+		private int unitOfWork;
 		public ConnInfo() {
 			dispose();
 		}
@@ -161,6 +507,12 @@ public class DataBaseMgr {
 		public void setTransaction(boolean transaction) {
 			this.transaction = transaction;
 		}
+		public int getUnitOfWork() {
+			return unitOfWork;
+		}
+		public void setUnitOfWork(int unitOfWork) {
+			this.unitOfWork = unitOfWork;
+		}
 		public Connection getOtherConn(String topic) {
 			return otherConnMap.get(topic);
 		}
@@ -170,11 +522,27 @@ public class DataBaseMgr {
 		public Collection<Connection> listOtherConn() {
 			return otherConnMap.values();
 		}
+		public Connection getReplicaConn(String key) {
+			return replicaConnMap.get(key);
+		}
+		public void putReplicaConn(String key, Connection conn) {
+			replicaConnMap.put(key, conn);
+		}
+		public Collection<Connection> listReplicaConn() {
+			return replicaConnMap.values();
+		}
+		public long getWriteTime(String key) {
+			return writeTimeMap.getOrDefault(key, 0L);
+		}
+		public void setWriteTime(String key, long time) {
+			writeTimeMap.put(key, time);
+		}
 		public void dispose() {
 			serviceDiscard = false;
 			remoteDiscard = false;
 			conn = null;
 			otherConnMap.clear();
+			replicaConnMap.clear();
 			transaction = false;
 		}
 	}
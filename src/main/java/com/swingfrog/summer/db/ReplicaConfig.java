@@ -0,0 +1,42 @@
+package com.swingfrog.summer.db;
+
+public class ReplicaConfig {
+
+	private int weight;
+	private long stickyMs = -1;
+	private long checkMs;
+	private long maxLagSeconds;
+	
+	public int getWeight() {
+		return weight;
+	}
+	
+	public void setWeight(int weight) {
+		this.weight = weight;
+	}
+	
+	public long getStickyMs() {
+		return stickyMs;
+	}
+	
+	public void setStickyMs(long stickyMs) {
+		this.stickyMs = stickyMs;
+	}
+	
+	public long getCheckMs() {
+		return checkMs;
+	}
+	
+	public void setCheckMs(long checkMs) {
+		this.checkMs = checkMs;
+	}
+	
+	public long getMaxLagSeconds() {
+		return maxLagSeconds;
+	}
+	
+	public void setMaxLagSeconds(long maxLagSeconds) {
+		this.maxLagSeconds = maxLagSeconds;
+	}
+
+}
@@ -0,0 +1,44 @@
+package com.swingfrog.summer.db;
+
+import com.alibaba.druid.pool.DruidDataSource;
+
+/**
+ * 从库数据源, 按权重分配读请求, 健康检查失败或复制延迟过大时不参与分配
+ */
+class ReplicaDataSource {
+
+	private final DruidDataSource dataSource;
+	private final int weight;
+	private volatile boolean healthy = true;
+	
+	ReplicaDataSource(DruidDataSource dataSource, int weight) {
+		this.dataSource = dataSource;
+		this.weight = weight;
+	}
+	
+	DruidDataSource getDataSource() {
+		return dataSource;
+	}
+	
+	int getWeight() {
+		return weight;
+	}
+	
+	boolean isHealthy() {
+		return healthy;
+	}
+	
+	/**
+	 * 返回状态是否改变
+	 */
+	boolean setHealthy(boolean healthy) {
+		boolean changed = this.healthy != healthy;
+		this.healthy = healthy;
+		return changed;
+	}
+	
+	String getName() {
+		return dataSource.getUrl();
+	}
+
+}
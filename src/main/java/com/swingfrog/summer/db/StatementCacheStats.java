@@ -0,0 +1,52 @@
+package com.swingfrog.summer.db;
+
+/**
+ * 预编译语句缓存的统计, 命中表示复用了连接上已缓存的PreparedStatement
+ */
+public class StatementCacheStats {
+
+	private final long hitCount;
+	private final long missCount;
+	private final long cachedCount;
+	private final long prepareCount;
+	
+	public StatementCacheStats(long hitCount, long missCount, long cachedCount, long prepareCount) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.cachedCount = cachedCount;
+		this.prepareCount = prepareCount;
+	}
+	
+	public long getHitCount() {
+		return hitCount;
+	}
+	
+	public long getMissCount() {
+		return missCount;
+	}
+	
+	public long getCachedCount() {
+		return cachedCount;
+	}
+	
+	public long getPrepareCount() {
+		return prepareCount;
+	}
+	
+	public double getHitRate() {
+		long total = hitCount + missCount;
+		return total == 0 ? 1.0 : (double) hitCount / total;
+	}
+	
+	StatementCacheStats plus(StatementCacheStats other) {
+		return new StatementCacheStats(hitCount + other.hitCount, missCount + other.missCount,
+				cachedCount + other.cachedCount, prepareCount + other.prepareCount);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("StatementCacheStats{hitCount=%s, missCount=%s, hitRate=%.4f, cachedCount=%s, prepareCount=%s}",
+				hitCount, missCount, getHitRate(), cachedCount, prepareCount);
+	}
+
+}
@@ -2,7 +2,20 @@ package com.swingfrog.summer.db.repository;
 
 public class AsyncCacheConfig {
 
+    public static final String HIGH_WATER_POLICY_BLOCK = "block";
+    public static final String HIGH_WATER_POLICY_SLOW = "slow";
+    public static final String HIGH_WATER_POLICY_SYNC = "sync";
+
     private int coreThread;
+    private int batchSize;
+    private int flushThread;
+    private int highWaterMark;
+    private String highWaterPolicy;
+    private int highWaterBlockMs;
+    private int highWaterSlowMs;
+    private String journalDir;
+    private int journalSegmentSize;
+    private int journalSyncMs;
 
     public int getCoreThread() {
         return coreThread;
@@ -12,10 +25,91 @@ public class AsyncCacheConfig {
         this.coreThread = coreThread;
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getFlushThread() {
+        return flushThread;
+    }
+
+    public void setFlushThread(int flushThread) {
+        this.flushThread = flushThread;
+    }
+
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    public void setHighWaterMark(int highWaterMark) {
+        this.highWaterMark = highWaterMark;
+    }
+
+    public String getHighWaterPolicy() {
+        return highWaterPolicy;
+    }
+
+    public void setHighWaterPolicy(String highWaterPolicy) {
+        this.highWaterPolicy = highWaterPolicy;
+    }
+
+    public int getHighWaterBlockMs() {
+        return highWaterBlockMs;
+    }
+
+    public void setHighWaterBlockMs(int highWaterBlockMs) {
+        this.highWaterBlockMs = highWaterBlockMs;
+    }
+
+    public int getHighWaterSlowMs() {
+        return highWaterSlowMs;
+    }
+
+    public void setHighWaterSlowMs(int highWaterSlowMs) {
+        this.highWaterSlowMs = highWaterSlowMs;
+    }
+
+    public String getJournalDir() {
+        return journalDir;
+    }
+
+    public void setJournalDir(String journalDir) {
+        this.journalDir = journalDir;
+    }
+
+    public int getJournalSegmentSize() {
+        return journalSegmentSize;
+    }
+
+    public void setJournalSegmentSize(int journalSegmentSize) {
+        this.journalSegmentSize = journalSegmentSize;
+    }
+
+    public int getJournalSyncMs() {
+        return journalSyncMs;
+    }
+
+    public void setJournalSyncMs(int journalSyncMs) {
+        this.journalSyncMs = journalSyncMs;
+    }
+
     @Override
     public String toString() {
         return "AsyncCacheConfig{" +
                 "coreThread=" + coreThread +
+                ", batchSize=" + batchSize +
+                ", flushThread=" + flushThread +
+                ", highWaterMark=" + highWaterMark +
+                ", highWaterPolicy='" + highWaterPolicy + '\'' +
+                ", highWaterBlockMs=" + highWaterBlockMs +
+                ", highWaterSlowMs=" + highWaterSlowMs +
+                ", journalDir='" + journalDir + '\'' +
+                ", journalSegmentSize=" + journalSegmentSize +
+                ", journalSyncMs=" + journalSyncMs +
                 '}';
     }
 }
@@ -0,0 +1,327 @@
+package com.swingfrog.summer.db.repository;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 异步缓存仓库的预写日志, 每张表一个目录, 按顺序写入内存映射的分段文件, 定时刷盘
+ * 分段写满或打开超过ROLL_MS后关闭并解除映射, 已写入数据库的关闭分段被删除
+ * 记录格式: 长度(int) + 类型(byte) + 内容 + 校验(int)
+ */
+class AsyncCacheJournal<T, K> {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncCacheJournal.class);
+
+    static final byte ADD = 1;
+    static final byte REMOVE = 2;
+    static final byte SAVE = 3;
+
+    private static final String SUFFIX = ".journal";
+    private static final int HEAD_SIZE = 5;
+    private static final int CRC_SIZE = 4;
+    private static final long ROLL_MS = 60_000;
+
+    private final TableMeta tableMeta;
+    private final Class<T> entityClass;
+    private final File dir;
+    private final int segmentSize;
+    private final LinkedList<Segment> closeSegments = Lists.newLinkedList();
+    private final List<File> loadFiles = Lists.newArrayList();
+    private Segment segment;
+    private long nextSeq;
+    private volatile boolean dirty;
+
+    AsyncCacheJournal(TableMeta tableMeta, Class<T> entityClass, String journalDir, int segmentSize) {
+        this.tableMeta = tableMeta;
+        this.entityClass = entityClass;
+        this.dir = new File(journalDir, tableMeta.getName());
+        this.segmentSize = segmentSize;
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new RuntimeException(String.format("async cache journal dir[%s] create failure", dir.getAbsolutePath()));
+        }
+    }
+
+    /**
+     * 读取上次未写入数据库的记录, 返回每个主键最后的状态, 值为null表示删除
+     */
+    Map<K, T> load() throws IOException {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        Map<K, T> changes = Maps.newLinkedHashMap();
+        if (files == null) {
+            return changes;
+        }
+        Arrays.sort(files, Comparator.comparingLong(AsyncCacheJournal::getSeq));
+        for (File file : files) {
+            nextSeq = Math.max(nextSeq, getSeq(file) + 1);
+            loadFiles.add(file);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                try {
+                    read(file, buffer, changes);
+                } finally {
+                    unmap(buffer);
+                }
+            }
+        }
+        return changes;
+    }
+
+    private void read(File file, ByteBuffer buffer, Map<K, T> changes) {
+        while (buffer.remaining() >= HEAD_SIZE + CRC_SIZE) {
+            int length = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining() - 1 - CRC_SIZE) {
+                break;
+            }
+            byte type = buffer.get();
+            byte[] data = new byte[length];
+            buffer.get(data);
+            if (buffer.getInt() != crc(type, data)) {
+                log.warn("async cache journal table[{}] file[{}] broken record, skip the rest", tableMeta.getName(), file.getName());
+                break;
+            }
+            if (type == REMOVE) {
+                changes.put(JSON.parseObject(data, tableMeta.getPrimaryColumn().getField().getGenericType()), null);
+            } else {
+                T obj = decode(data);
+                K pk = (K) TableValueBuilder.getPrimaryKeyValue(tableMeta, obj);
+                changes.remove(pk);
+                changes.put(pk, obj);
+            }
+        }
+    }
+
+    /**
+     * 删除已读取的文件并创建新的分段, 需在load的记录写入数据库之后调用
+     */
+    synchronized void start() throws IOException {
+        for (File file : loadFiles) {
+            if (!file.delete()) {
+                log.warn("async cache journal file[{}] delete failure", file.getAbsolutePath());
+            }
+        }
+        loadFiles.clear();
+        segment = newSegment(segmentSize);
+    }
+
+    void append(byte type, K primaryKey, T obj) {
+        byte[] data = type == REMOVE ? JSON.toJSONBytes(primaryKey) : encode(obj);
+        int size = HEAD_SIZE + data.length + CRC_SIZE;
+        synchronized (this) {
+            if (segment == null) {
+                return;
+            }
+            try {
+                if (segment.buffer.remaining() < size) {
+                    closeSegment();
+                    segment = newSegment(Math.max(segmentSize, size));
+                }
+            } catch (IOException e) {
+                log.error(e.getMessage(), e);
+                return;
+            }
+            segment.buffer.putInt(data.length);
+            segment.buffer.put(type);
+            segment.buffer.put(data);
+            segment.buffer.putInt(crc(type, data));
+            segment.lastWriteTime = System.currentTimeMillis();
+        }
+        dirty = true;
+    }
+
+    /**
+     * 合并刷盘, 由定时任务调用
+     */
+    void sync() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        Segment current;
+        synchronized (this) {
+            current = segment;
+        }
+        if (current != null) {
+            // 不持有日志的锁, 避免刷盘时阻塞写入; 分段关闭后不能再访问已解除的映射
+            synchronized (current) {
+                if (!current.closed) {
+                    current.buffer.force();
+                }
+            }
+        }
+    }
+
+    /**
+     * 当前分段打开超过ROLL_MS时关闭, 之后的记录写入新的分段, 使低频写入的表也能删除已写入数据库的记录
+     */
+    synchronized void roll() {
+        if (segment == null || segment.buffer.position() == 0 || System.currentTimeMillis() - segment.createTime < ROLL_MS) {
+            return;
+        }
+        try {
+            closeSegment();
+            segment = newSegment(segmentSize);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 删除最后写入时间早于time的已关闭分段, 需保证这些记录已经写入数据库
+     */
+    synchronized void truncate(long time) {
+        while (!closeSegments.isEmpty() && closeSegments.getFirst().lastWriteTime < time) {
+            File file = closeSegments.removeFirst().file;
+            if (!file.delete()) {
+                log.warn("async cache journal file[{}] delete failure", file.getAbsolutePath());
+            }
+        }
+    }
+
+    synchronized void close() {
+        if (segment == null) {
+            return;
+        }
+        try {
+            release(segment);
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+        segment = null;
+    }
+
+    private void closeSegment() throws IOException {
+        release(segment);
+        closeSegments.add(segment);
+    }
+
+    private static void release(Segment segment) throws IOException {
+        synchronized (segment) {
+            segment.closed = true;
+            segment.buffer.force();
+            segment.channel.close();
+            unmap(segment.buffer);
+        }
+    }
+
+    /**
+     * 立即解除内存映射, 否则映射要等到buffer被回收时才释放
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (NoSuchMethodException e) {
+            // java 8
+            try {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (ReflectiveOperationException ex) {
+                log.warn("async cache journal unmap failure - {}", ex.getMessage());
+            }
+        } catch (ReflectiveOperationException e) {
+            log.warn("async cache journal unmap failure - {}", e.getMessage());
+        }
+    }
+
+    private Segment newSegment(int size) throws IOException {
+        File file = new File(dir, String.format("%020d%s", nextSeq ++, SUFFIX));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        FileChannel channel = raf.getChannel();
+        return new Segment(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+    }
+
+    private byte[] encode(T obj) {
+        JSONObject json = new JSONObject();
+        json.put(tableMeta.getPrimaryColumn().getName(), TableValueBuilder.getPrimaryKeyValue(tableMeta, obj));
+        tableMeta.getColumns().forEach(columnMeta -> {
+            try {
+                json.put(columnMeta.getName(), columnMeta.getField().get(obj));
+            } catch (IllegalAccessException e) {
+                log.error(e.getMessage(), e);
+            }
+        });
+        return JSON.toJSONBytes(json);
+    }
+
+    private T decode(byte[] data) {
+        JSONObject json = JSON.parseObject(data, JSONObject.class);
+        try {
+            T obj = entityClass.newInstance();
+            setField(tableMeta.getPrimaryColumn(), obj, json);
+            tableMeta.getColumns().forEach(columnMeta -> setField(columnMeta, obj, json));
+            return obj;
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void setField(TableMeta.ColumnMeta columnMeta, T obj, JSONObject json) {
+        Field field = columnMeta.getField();
+        Object value = json.getObject(columnMeta.getName(), field.getGenericType());
+        if (value == null) {
+            return;
+        }
+        try {
+            field.set(obj, value);
+        } catch (IllegalAccessException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    private static int crc(byte type, byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+
+    private static long getSeq(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static class Segment {
+        final File file;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final long createTime = System.currentTimeMillis();
+        volatile long lastWriteTime;
+        boolean closed;
+        Segment(File file, FileChannel channel, MappedByteBuffer buffer) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+}
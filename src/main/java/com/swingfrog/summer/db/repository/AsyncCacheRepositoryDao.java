@@ -1,92 +1,551 @@
 package com.swingfrog.summer.db.repository;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
 import com.google.common.collect.Sets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public abstract class AsyncCacheRepositoryDao<T, K> extends CacheRepositoryDao<T, K> {
 
     private static final Logger log = LoggerFactory.getLogger(AsyncCacheRepositoryDao.class);
+    private static final int BUCKET_NUM = 10;
 
     private final ConcurrentLinkedQueue<Change<T, K>> waitChange = Queues.newConcurrentLinkedQueue();
-    private final ConcurrentMap<T, Long> waitSave = Maps.newConcurrentMap();
+    private final ConcurrentLinkedQueue<Change<T, K>> retryChange = Queues.newConcurrentLinkedQueue();
+    private final Map<T, Long> waitSave = Maps.newConcurrentMap();
+    private final TreeMap<Long, List<T>> waitSaveBucket = Maps.newTreeMap();
     private long delayTime = delayTime();
+    private final long bucketTime = Math.max(1, delayTime / BUCKET_NUM);
     private final Set<K> waitAdd = Sets.newConcurrentHashSet();
+    private final Map<K, Integer> waitRemove = Maps.newConcurrentMap();
+    private final Map<K, T> pinned = Maps.newConcurrentMap();
+    private final boolean upsert = upsert();
+    private final int flushShard = Math.max(1, flushShard());
+    private final int flushConcurrency = flushConcurrency();
+    private final int highWaterMark = highWaterMark();
+    private final AtomicInteger waitChangeSize = new AtomicInteger(0);
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    private final Object highWaterLock = new Object();
+    private AsyncCacheStatistics statistics;
+    private AsyncCacheJournal<T, K> journal;
 
     protected abstract long delayTime();
 
+    /**
+     * 开启后写入时合并同一主键的新增和修改, 使用多行INSERT ... ON DUPLICATE KEY UPDATE
+     */
+    protected boolean upsert() {
+        return false;
+    }
+
+    /**
+     * 写入时按主键哈希分成的分片数, 每个分片使用独立的连接和事务
+     */
+    protected int flushShard() {
+        return 1;
+    }
+
+    /**
+     * 同时写入的最大分片数
+     */
+    protected int flushConcurrency() {
+        return flushShard();
+    }
+
+    /**
+     * 等待写入数量的上限, 超过后按asyncCache.highWaterPolicy处理调用方 (0为不限制)
+     */
+    protected int highWaterMark() {
+        return AsyncCacheRepositoryMgr.get().getConfig().getHighWaterMark();
+    }
+
+    /**
+     * 开启后新增/删除/修改先写入本地预写日志 (asyncCache.journalDir), 启动时重放未写入数据库的记录
+     */
+    protected boolean journal() {
+        String journalDir = AsyncCacheRepositoryMgr.get().getConfig().getJournalDir();
+        return journalDir != null && !journalDir.isEmpty();
+    }
+
     @Override
     void init() {
         super.init();
+        if (journal()) {
+            initJournal();
+        }
+        statistics = new AsyncCacheStatistics(tableMeta.getName(), waitChangeSize::get, waitSave::size, this::getOldestDirtyTime);
+        AsyncCacheRepositoryMgr.get().addStatistics(statistics);
         AsyncCacheRepositoryMgr.get().getScheduledExecutor().scheduleWithFixedDelay(
                 () -> delay(false),
                 delayTime,
                 delayTime,
                 TimeUnit.MILLISECONDS);
-        AsyncCacheRepositoryMgr.get().addHook(() -> delay(true));
+        AsyncCacheRepositoryMgr.get().addHook(() -> {
+            delay(true);
+            if (journal != null) {
+                journal.close();
+            }
+        });
         if (delayTime >= expireTime()) {
-            throw new RuntimeException(String.format("async cache repository delayTime[%s] must be less than expireTime[%s]", delayTime, expireTime()));
+            log.warn("async cache repository table[{}] delayTime[{}] not less than expireTime[{}], dirty entities stay pinned until flushed", tableMeta.getName(), delayTime, expireTime());
         }
     }
 
+    private void initJournal() {
+        AsyncCacheConfig config = AsyncCacheRepositoryMgr.get().getConfig();
+        AsyncCacheJournal<T, K> journal = new AsyncCacheJournal<>(tableMeta, getEntityClass(), config.getJournalDir(), config.getJournalSegmentSize());
+        try {
+            Map<K, T> changes = journal.load();
+            if (!changes.isEmpty()) {
+                List<K> removes = Lists.newArrayList();
+                List<T> rows = Lists.newArrayList();
+                changes.forEach((pk, obj) -> {
+                    if (obj == null) {
+                        removes.add(pk);
+                    } else {
+                        rows.add(obj);
+                    }
+                });
+                if (!transaction(() -> {
+                    if (!removes.isEmpty()) {
+                        batchRemoveByPrimaryKey(removes);
+                    }
+                    if (!rows.isEmpty()) {
+                        batchUpsert(rows);
+                    }
+                })) {
+                    throw new RuntimeException(String.format("async cache repository table[%s] journal replay failure", tableMeta.getName()));
+                }
+                if (isAutoIncrement()) {
+                    changes.keySet().forEach(pk -> ensurePrimaryKey(((Number) pk).longValue()));
+                }
+                log.info("async cache repository table[{}] journal replay remove[{}] upsert[{}]", tableMeta.getName(), removes.size(), rows.size());
+            }
+            journal.start();
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("async cache repository table[%s] journal load failure", tableMeta.getName()), e);
+        }
+        AsyncCacheRepositoryMgr.get().getScheduledExecutor().scheduleWithFixedDelay(
+                journal::sync,
+                config.getJournalSyncMs(),
+                config.getJournalSyncMs(),
+                TimeUnit.MILLISECONDS);
+        this.journal = journal;
+    }
+
     private synchronized void delay(boolean force) {
+        long startTime = System.currentTimeMillis();
+        long flushedTime = force ? startTime : Math.min(startTime, (startTime - delayTime) / bucketTime * bucketTime);
+        if (journal != null) {
+            journal.roll();
+        }
+        List<Change<T, K>> changes = Lists.newArrayList();
+        List<T> addObjs = Lists.newArrayList();
+        Map<T, Long> saves = Maps.newLinkedHashMap();
+        Queue<Change<T, K>> failedChanges = Queues.newConcurrentLinkedQueue();
+        Queue<T> failedSaves = Queues.newConcurrentLinkedQueue();
         try {
-            while (!waitChange.isEmpty()) {
-                Change<T, K> change = waitChange.poll();
-                if (change.add) {
-                    delayAdd(change.obj, change.pk);
-                } else {
-                    delayRemove(change.pk);
+            List<List<Change<T, K>>> shardChanges = newShardList();
+            List<List<T>> shardSaves = newShardList();
+            pollChange(retryChange, changes, addObjs);
+            pollChange(waitChange, changes, addObjs);
+            changes.forEach(change -> {
+                if (!change.add || waitAdd.remove(change.pk)) {
+                    shardChanges.get(shardIndex(change.pk)).add(change);
                 }
+            });
+            int changeCount = shardChanges.stream().mapToInt(List::size).sum();
+            saves = pollWaitSave(force);
+            saves.keySet().forEach(obj -> shardSaves.get(shardIndex(TableValueBuilder.getPrimaryKeyValue(tableMeta, obj))).add(obj));
+            int saveCount = saves.size();
+            if (changeCount > 0 || saveCount > 0) {
+                flushShards(shardChanges, shardSaves, failedChanges, failedSaves);
+            }
+            if (!failedChanges.isEmpty() || !failedSaves.isEmpty()) {
+                log.warn("async cache repository table[{}] write failure changeCount[{}] saveCount[{}], retry next delay", tableMeta.getName(), failedChanges.size(), failedSaves.size());
             }
-            delaySave(force);
+            statistics.flush(changeCount + saveCount, startTime, System.currentTimeMillis());
+            log.info("async cache repository table[{}] delay changeCount[{}] nowSaveCount[{}] waitSaveCount[{}]", tableMeta.getName(), changeCount, saveCount, waitSave.size());
         } catch (Throwable e) {
             log.error("AsyncCacheRepository delay failure.");
             log.error(e.getMessage(), e);
+            failedChanges.clear();
+            changes.stream().filter(change -> change.add).forEach(failedChanges::add);
+            failedSaves.clear();
+            failedSaves.addAll(saves.keySet());
+            flushedTime = 0;
+        } finally {
+            Set<Object> failed = Sets.newIdentityHashSet();
+            failedChanges.forEach(change -> failed.add(change.obj));
+            failed.addAll(failedSaves);
+            retry(failedChanges, failedSaves, saves);
+            if (journal != null && flushedTime > 0) {
+                // 失败的记录已放回等待队列, 只删除早于最早未写入记录的日志
+                long dirtyTime = getOldestDirtyTime();
+                journal.truncate(dirtyTime == 0 ? flushedTime : Math.min(flushedTime, dirtyTime));
+            }
+            changes.stream().filter(change -> !change.add).forEach(change ->
+                    waitRemove.computeIfPresent(change.pk, (k, count) -> count > 1 ? count - 1 : null));
+            addObjs.stream().filter(obj -> !failed.contains(obj)).forEach(this::unpin);
+            saves.keySet().stream().filter(obj -> !failed.contains(obj)).forEach(this::unpin);
+            synchronized (highWaterLock) {
+                highWaterLock.notifyAll();
+            }
         }
     }
 
-    private void delayAdd(T obj, K primaryKey) {
-        if (waitAdd.remove(primaryKey)) {
-            super.addByPrimaryKeyNotAddCache(obj, primaryKey);
+    private void pollChange(Queue<Change<T, K>> queue, List<Change<T, K>> changes, List<T> addObjs) {
+        Change<T, K> change;
+        while ((change = queue.poll()) != null) {
+            waitChangeSize.decrementAndGet();
+            changes.add(change);
+            if (change.add) {
+                addObjs.add(change.obj);
+            }
         }
     }
 
-    private void delayRemove(K pk) {
-        super.removeByPrimaryKeyNotRemoveCache(pk);
+    /**
+     * 写入失败的新增和修改放回等待队列并保持固定, 期间已被删除或替换的实体不再重试
+     */
+    private void retry(Collection<Change<T, K>> failedChanges, Collection<T> failedSaves, Map<T, Long> saves) {
+        for (Change<T, K> change : failedChanges) {
+            if (pinned.get(change.pk) != change.obj) {
+                continue;
+            }
+            waitAdd.add(change.pk);
+            retryChange.add(change);
+            waitChangeSize.incrementAndGet();
+        }
+        if (failedSaves.isEmpty()) {
+            return;
+        }
+        synchronized (waitSaveBucket) {
+            for (T obj : failedSaves) {
+                if (pinned.get(TableValueBuilder.getPrimaryKeyValue(tableMeta, obj)) != obj) {
+                    continue;
+                }
+                Long bucketKey = saves.get(obj);
+                if (waitSave.putIfAbsent(obj, bucketKey) == null) {
+                    waitSaveBucket.computeIfAbsent(bucketKey, key -> Lists.newArrayList()).add(obj);
+                }
+            }
+        }
     }
 
-    private void delaySave(boolean force) {
-        long time = System.currentTimeMillis();
-        List<T> list = waitSave.entrySet().stream()
-                .filter(entry -> force || time - entry.getValue() >= delayTime)
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
-        if (!list.isEmpty()) {
-            super.save(list);
+    private long getOldestDirtyTime() {
+        long time = 0;
+        Change<T, K> change = retryChange.peek();
+        if (change == null) {
+            change = waitChange.peek();
+        }
+        if (change != null) {
+            time = change.time;
+        }
+        synchronized (waitSaveBucket) {
+            if (!waitSaveBucket.isEmpty()) {
+                long saveTime = waitSaveBucket.firstKey() * bucketTime;
+                time = time == 0 ? saveTime : Math.min(time, saveTime);
+            }
+        }
+        return time;
+    }
+
+    private void checkHighWater() {
+        if (highWaterMark <= 0 || waitChangeSize.get() + waitSave.size() < highWaterMark) {
+            return;
+        }
+        statistics.highWater();
+        AsyncCacheConfig config = AsyncCacheRepositoryMgr.get().getConfig();
+        if (AsyncCacheConfig.HIGH_WATER_POLICY_SYNC.equals(config.getHighWaterPolicy())) {
+            // 在写入线程中执行并等待完成, 不能加入调用方的事务, 否则调用方回滚时其他调用方的积压一起丢失
+            try {
+                AsyncCacheRepositoryMgr.get().getScheduledExecutor().submit(() -> delay(true)).get();
+            } catch (InterruptedException | ExecutionException e) {
+                log.error(e.getMessage(), e);
+            }
+            return;
+        }
+        if (flushRequested.compareAndSet(false, true)) {
+            AsyncCacheRepositoryMgr.get().getScheduledExecutor().execute(() -> {
+                flushRequested.set(false);
+                delay(true);
+            });
+        }
+        try {
+            if (AsyncCacheConfig.HIGH_WATER_POLICY_SLOW.equals(config.getHighWaterPolicy())) {
+                Thread.sleep(config.getHighWaterSlowMs());
+                return;
+            }
+            long endTime = System.currentTimeMillis() + config.getHighWaterBlockMs();
+            synchronized (highWaterLock) {
+                while (waitChangeSize.get() + waitSave.size() >= highWaterMark) {
+                    long waitMs = endTime - System.currentTimeMillis();
+                    if (waitMs <= 0) {
+                        log.warn("async cache repository table[{}] high water block timeout", tableMeta.getName());
+                        break;
+                    }
+                    highWaterLock.wait(waitMs);
+                }
+            }
+        } catch (InterruptedException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    private void unpin(T obj) {
+        K pk = (K) TableValueBuilder.getPrimaryKeyValue(tableMeta, obj);
+        pinned.computeIfPresent(pk, (k, v) -> v == obj && !waitSave.containsKey(v) && !waitAdd.contains(k) ? null : v);
+    }
+
+    @Override
+    protected T load(K primaryKey) {
+        T obj = pinned.get(primaryKey);
+        if (obj != null) {
+            return obj;
+        }
+        return super.load(primaryKey);
+    }
+
+    @Override
+    protected Map<K, T> loadAll(Collection<K> primaryKeys) {
+        Map<K, T> map = Maps.newHashMap();
+        List<K> rest = Lists.newArrayList();
+        for (K primaryKey : primaryKeys) {
+            T obj = pinned.get(primaryKey);
+            if (obj != null) {
+                map.put(primaryKey, obj);
+            } else if (!waitRemove.containsKey(primaryKey)) {
+                rest.add(primaryKey);
+            }
+        }
+        if (!rest.isEmpty()) {
+            map.putAll(super.loadAll(rest));
+        }
+        return map;
+    }
+
+    @Override
+    protected Collection<K> listPendingPrimaryKey() {
+        return pinned.keySet();
+    }
+
+    /**
+     * 等待写入而被固定在内存中的实体数量, 缓存淘汰后从这里重新加载
+     */
+    public int getPinnedSize() {
+        return pinned.size();
+    }
+
+    private <E> List<List<E>> newShardList() {
+        List<List<E>> list = Lists.newArrayListWithCapacity(flushShard);
+        for (int i = 0; i < flushShard; i++) {
+            list.add(Lists.newArrayList());
+        }
+        return list;
+    }
+
+    private int shardIndex(Object primaryKey) {
+        return flushShard == 1 ? 0 : Math.floorMod(primaryKey.hashCode(), flushShard);
+    }
+
+    private Map<T, Long> pollWaitSave(boolean force) {
+        Map<T, Long> map = Maps.newLinkedHashMap();
+        synchronized (waitSaveBucket) {
+            NavigableMap<Long, List<T>> due = force ? waitSaveBucket : waitSaveBucket.headMap(
+                    (System.currentTimeMillis() - delayTime) / bucketTime - 1, true);
+            due.forEach((bucketKey, bucket) -> bucket.forEach(obj -> {
+                map.put(obj, bucketKey);
+                waitSave.remove(obj);
+            }));
+            due.clear();
+        }
+        return map;
+    }
+
+    /**
+     * 删除时取消还未写入的修改, 否则upsert时会重新插入已删除的行
+     */
+    private void cancelSave(T obj) {
+        synchronized (waitSaveBucket) {
+            Long bucketKey = waitSave.remove(obj);
+            if (bucketKey == null) {
+                return;
+            }
+            List<T> bucket = waitSaveBucket.get(bucketKey);
+            if (bucket != null) {
+                bucket.removeIf(o -> o == obj);
+                if (bucket.isEmpty()) {
+                    waitSaveBucket.remove(bucketKey);
+                }
+            }
+        }
+    }
+
+    private void flushShards(List<List<Change<T, K>>> shardChanges, List<List<T>> shardSaves,
+                             Queue<Change<T, K>> failedChanges, Queue<T> failedSaves) throws InterruptedException {
+        int concurrency = Math.max(1, Math.min(flushConcurrency, flushShard));
+        if (concurrency == 1) {
+            unitOfWork(() -> {
+                for (int i = 0; i < flushShard; i++) {
+                    flush(shardChanges.get(i), shardSaves.get(i), failedChanges, failedSaves);
+                }
+            });
+            return;
+        }
+        AtomicInteger next = new AtomicInteger(0);
+        CountDownLatch latch = new CountDownLatch(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            AsyncCacheRepositoryMgr.get().getFlushExecutor().execute(() -> {
+                try {
+                    unitOfWork(() -> {
+                        int shard;
+                        while ((shard = next.getAndIncrement()) < flushShard) {
+                            flush(shardChanges.get(shard), shardSaves.get(shard), failedChanges, failedSaves);
+                        }
+                    });
+                } catch (Throwable e) {
+                    log.error(e.getMessage(), e);
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        latch.await();
+    }
+
+    /**
+     * 没有写入数据库的新增和修改放入failedChanges和failedSaves
+     */
+    private void flush(List<Change<T, K>> changes, List<T> saveList, Queue<Change<T, K>> failedChanges, Queue<T> failedSaves) {
+        if (changes.isEmpty() && saveList.isEmpty()) {
+            return;
+        }
+        try {
+            if (transaction(() -> {
+                if (upsert) {
+                    delayUpsert(changes, saveList);
+                } else {
+                    delayBatch(changes, saveList);
+                }
+            })) {
+                return;
+            }
+            log.warn("async cache repository table[{}] batch failure, write one by one", tableMeta.getName());
+            delayOneByOne(changes, saveList, failedChanges, failedSaves);
+        } catch (Throwable e) {
+            log.error(e.getMessage(), e);
+            changes.stream().filter(change -> change.add).forEach(failedChanges::add);
+            failedSaves.addAll(saveList);
+        }
+    }
+
+    private void delayBatch(List<Change<T, K>> changes, List<T> saveList) {
+        int start = 0;
+        while (start < changes.size()) {
+            boolean add = changes.get(start).add;
+            int end = start;
+            while (end < changes.size() && changes.get(end).add == add) {
+                end ++;
+            }
+            List<Change<T, K>> part = changes.subList(start, end);
+            if (add) {
+                batchAdd(part.stream().map(change -> change.obj).collect(Collectors.toList()));
+            } else {
+                batchRemoveByPrimaryKey(part.stream().map(change -> change.pk).collect(Collectors.toList()));
+            }
+            start = end;
+        }
+        if (!saveList.isEmpty()) {
+            batchSave(saveList);
+        }
+    }
+
+    private void delayUpsert(List<Change<T, K>> changes, List<T> saveList) {
+        Map<K, T> rows = Maps.newLinkedHashMap();
+        Set<K> removes = Sets.newLinkedHashSet();
+        changes.forEach(change -> {
+            if (change.add) {
+                rows.put(change.pk, change.obj);
+            } else {
+                rows.remove(change.pk);
+                removes.add(change.pk);
+            }
+        });
+        saveList.forEach(obj -> {
+            K pk = (K) TableValueBuilder.getPrimaryKeyValue(tableMeta, obj);
+            if (rows.containsKey(pk) || (!removes.contains(pk) && isDirty(obj))) {
+                rows.put(pk, obj);
+            }
+        });
+        if (!removes.isEmpty()) {
+            batchRemoveByPrimaryKey(Lists.newArrayList(removes));
+        }
+        if (!rows.isEmpty()) {
+            batchUpsert(Lists.newArrayList(rows.values()));
+        }
+    }
+
+    /**
+     * 删除不存在的行不算失败; 新增的行已存在时改为修改, 修改的行不存在且未被删除时改为新增
+     */
+    private void delayOneByOne(List<Change<T, K>> changes, List<T> saveList, Queue<Change<T, K>> failedChanges, Queue<T> failedSaves) {
+        for (Change<T, K> change : changes) {
+            if (change.add) {
+                if (!super.addByPrimaryKeyNotAddCache(change.obj, change.pk) && !super.save(change.obj)) {
+                    log.error("async cache repository table[{}] add failure primary key[{}]", tableMeta.getName(), change.pk);
+                    failedChanges.add(change);
+                }
+            } else {
+                super.removeByPrimaryKeyNotRemoveCache(change.pk);
+            }
+        }
+        for (T obj : saveList) {
+            K pk = (K) TableValueBuilder.getPrimaryKeyValue(tableMeta, obj);
+            if (super.save(obj) || pinned.get(pk) != obj) {
+                continue;
+            }
+            if (!super.addByPrimaryKeyNotAddCache(obj, pk)) {
+                log.error("async cache repository table[{}] save failure primary key[{}]", tableMeta.getName(), pk);
+                failedSaves.add(obj);
+            }
         }
-        list.stream().filter(k -> force || time - waitSave.get(k) >= delayTime).forEach(waitSave::remove);
-        log.info("async cache repository table[{}] delay save nowSaveCount[{}] waitSaveCount[{}]", tableMeta.getName(), list.size(), waitSave.size());
     }
 
     @Override
     public boolean add(T obj) {
         super.autoIncrementPrimaryKey(obj);
         K primaryKey = (K) TableValueBuilder.getPrimaryKeyValue(tableMeta, obj);
-        super.addCache(primaryKey, obj);
         waitAdd.add(primaryKey);
+        pinned.put(primaryKey, obj);
+        super.addCache(primaryKey, obj);
         waitChange.add(new Change<>(obj, primaryKey));
+        waitChangeSize.incrementAndGet();
+        if (journal != null) {
+            journal.append(AsyncCacheJournal.ADD, primaryKey, obj);
+        }
+        checkHighWater();
         return true;
     }
 
@@ -97,14 +556,35 @@ public abstract class AsyncCacheRepositoryDao<T, K> extends CacheRepositoryDao<T
 
     @Override
     public boolean removeByPrimaryKey(K primaryKey) {
+        boolean cancel = waitAdd.remove(primaryKey);
+        if (!cancel) {
+            waitRemove.merge(primaryKey, 1, Integer::sum);
+        }
+        T pin = pinned.remove(primaryKey);
+        if (pin != null) {
+            cancelSave(pin);
+        }
         super.removeCacheByPrimaryKey(primaryKey);
-        if (waitAdd.remove(primaryKey)) {
+        if (journal != null) {
+            journal.append(AsyncCacheJournal.REMOVE, primaryKey, null);
+        }
+        if (cancel) {
             return true;
         }
         waitChange.add(new Change<>(primaryKey));
+        waitChangeSize.incrementAndGet();
+        checkHighWater();
         return true;
     }
 
+    @Override
+    public T get(K primaryKey) {
+        if (!waitRemove.isEmpty() && waitRemove.containsKey(primaryKey) && getCache(primaryKey) == null) {
+            return null;
+        }
+        return super.get(primaryKey);
+    }
+
     @Override
     public boolean save(T obj) {
         Objects.requireNonNull(obj, "async cache repository save param not null");
@@ -114,7 +594,23 @@ public abstract class AsyncCacheRepositoryDao<T, K> extends CacheRepositoryDao<T
             log.warn("async cache repository table[{}] primary key[{}] expire, can't save", tableMeta.getName(), pk);
             return false;
         }
-        waitSave.computeIfAbsent(obj, k -> System.currentTimeMillis());
+        boolean wait = !waitSave.containsKey(obj);
+        if (wait) {
+            synchronized (waitSaveBucket) {
+                long bucketKey = System.currentTimeMillis() / bucketTime;
+                if (waitSave.putIfAbsent(obj, bucketKey) == null) {
+                    waitSaveBucket.computeIfAbsent(bucketKey, k -> Lists.newArrayList()).add(obj);
+                }
+            }
+            pinned.put(pk, obj);
+        }
+        saveCache(obj);
+        if (journal != null) {
+            journal.append(AsyncCacheJournal.SAVE, pk, obj);
+        }
+        if (wait) {
+            checkHighWater();
+        }
         return true;
     }
 
@@ -123,10 +619,39 @@ public abstract class AsyncCacheRepositoryDao<T, K> extends CacheRepositoryDao<T
         objs.forEach(this::save);
     }
 
+    /**
+     * 写入只修改缓存, 直接在调用线程执行
+     */
+    @Override
+    public CompletableFuture<Boolean> addAsync(T obj) {
+        return completed(() -> add(obj));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> saveAsync(T obj) {
+        return completed(() -> save(obj));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> removeAsync(T obj) {
+        return completed(() -> remove(obj));
+    }
+
+    private static CompletableFuture<Boolean> completed(Supplier<Boolean> supplier) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        try {
+            future.complete(supplier.get());
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
     private static class Change<T, K> {
         T obj;
         K pk;
         boolean add;
+        long time = System.currentTimeMillis();
         Change(T obj, K pk) {
             this.obj = obj;
             this.pk = pk;
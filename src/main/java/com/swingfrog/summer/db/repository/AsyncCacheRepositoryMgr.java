@@ -1,5 +1,6 @@
 package com.swingfrog.summer.db.repository;
 
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.swingfrog.summer.config.ConfigUtil;
 import com.swingfrog.summer.util.ThreadCountUtil;
@@ -9,8 +10,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -18,10 +23,17 @@ import java.util.concurrent.TimeUnit;
 public class AsyncCacheRepositoryMgr {
 
     private static final Logger log = LoggerFactory.getLogger(AsyncCacheRepositoryMgr.class);
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int DEFAULT_HIGH_WATER_BLOCK_MS = 1000;
+    private static final int DEFAULT_HIGH_WATER_SLOW_MS = 10;
+    private static final int DEFAULT_JOURNAL_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int DEFAULT_JOURNAL_SYNC_MS = 10;
 
     private static ScheduledExecutorService scheduledExecutor;
+    private static ExecutorService flushExecutor;
     private AsyncCacheConfig config = new AsyncCacheConfig();
     private Set<Runnable> hooks = Sets.newConcurrentHashSet();
+    private Map<String, AsyncCacheStatistics> statisticsMap = Maps.newConcurrentMap();
 
     private static class SingleCase {
         public static final AsyncCacheRepositoryMgr INSTANCE = new AsyncCacheRepositoryMgr();
@@ -43,7 +55,30 @@ public class AsyncCacheRepositoryMgr {
         in.close();
         pro.clear();
         config.setCoreThread(ThreadCountUtil.convert(config.getCoreThread()));
-        log.info("async cache repository manager loading config, core thread num[{}]", config.getCoreThread());
+        if (config.getBatchSize() <= 0) {
+            config.setBatchSize(DEFAULT_BATCH_SIZE);
+        }
+        config.setFlushThread(ThreadCountUtil.convert(config.getFlushThread()));
+        if (config.getHighWaterPolicy() == null) {
+            config.setHighWaterPolicy(AsyncCacheConfig.HIGH_WATER_POLICY_BLOCK);
+        }
+        if (config.getHighWaterBlockMs() <= 0) {
+            config.setHighWaterBlockMs(DEFAULT_HIGH_WATER_BLOCK_MS);
+        }
+        if (config.getHighWaterSlowMs() <= 0) {
+            config.setHighWaterSlowMs(DEFAULT_HIGH_WATER_SLOW_MS);
+        }
+        if (config.getJournalSegmentSize() <= 0) {
+            config.setJournalSegmentSize(DEFAULT_JOURNAL_SEGMENT_SIZE);
+        }
+        if (config.getJournalSyncMs() <= 0) {
+            config.setJournalSyncMs(DEFAULT_JOURNAL_SYNC_MS);
+        }
+        if (config.getJournalDir() != null && !config.getJournalDir().isEmpty()) {
+            log.info("async cache repository manager journal dir[{}] segment size[{}] sync ms[{}]", config.getJournalDir(), config.getJournalSegmentSize(), config.getJournalSyncMs());
+        }
+        log.info("async cache repository manager high water mark[{}] policy[{}]", config.getHighWaterMark(), config.getHighWaterPolicy());
+        log.info("async cache repository manager loading config, core thread num[{}] batch size[{}] flush thread num[{}]", config.getCoreThread(), config.getBatchSize(), config.getFlushThread());
     }
 
     public void shutdown() {
@@ -59,6 +94,13 @@ public class AsyncCacheRepositoryMgr {
             }
         }
         triggerHook();
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+        }
+    }
+
+    public AsyncCacheConfig getConfig() {
+        return config;
     }
 
     public ScheduledExecutorService getScheduledExecutor() {
@@ -75,6 +117,32 @@ public class AsyncCacheRepositoryMgr {
         return scheduledExecutor;
     }
 
+    public ExecutorService getFlushExecutor() {
+        if (flushExecutor == null) {
+            synchronized (this) {
+                if (flushExecutor == null) {
+                    flushExecutor = Executors.newFixedThreadPool(
+                            ThreadCountUtil.convert(config.getFlushThread()),
+                            new DefaultThreadFactory("AsyncCacheRepositoryFlush"));
+                    log.info("async cache repository manager create flush executor");
+                }
+            }
+        }
+        return flushExecutor;
+    }
+
+    void addStatistics(AsyncCacheStatistics statistics) {
+        statisticsMap.put(statistics.getTableName(), statistics);
+    }
+
+    public AsyncCacheStatistics getStatistics(String tableName) {
+        return statisticsMap.get(tableName);
+    }
+
+    public Collection<AsyncCacheStatistics> listStatistics() {
+        return Collections.unmodifiableCollection(statisticsMap.values());
+    }
+
     public void addHook(Runnable hook) {
         hooks.add(hook);
     }
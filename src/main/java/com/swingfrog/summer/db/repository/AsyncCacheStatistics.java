@@ -0,0 +1,136 @@
+package com.swingfrog.summer.db.repository;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * 异步缓存仓库单表的写入统计, 通过AsyncCacheRepositoryMgr获取
+ */
+public class AsyncCacheStatistics {
+
+    /**
+     * 写入耗时分布的上限(毫秒), 最后一档为超过最大上限的次数
+     */
+    public static final long[] FLUSH_MS_BOUNDS = {10, 50, 100, 500, 1000, 5000};
+
+    private final String tableName;
+    private final IntSupplier waitChangeSize;
+    private final IntSupplier waitSaveSize;
+    private final LongSupplier oldestDirtyTime;
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushRows = new AtomicLong();
+    private final AtomicLong highWaterCount = new AtomicLong();
+    private final AtomicLongArray flushMsHistogram = new AtomicLongArray(FLUSH_MS_BOUNDS.length + 1);
+    private volatile long lastFlushTime = System.currentTimeMillis();
+    private volatile long lastFlushMs;
+    private volatile double rowsPerSec;
+
+    AsyncCacheStatistics(String tableName, IntSupplier waitChangeSize, IntSupplier waitSaveSize, LongSupplier oldestDirtyTime) {
+        this.tableName = tableName;
+        this.waitChangeSize = waitChangeSize;
+        this.waitSaveSize = waitSaveSize;
+        this.oldestDirtyTime = oldestDirtyTime;
+    }
+
+    void flush(int rows, long startTime, long endTime) {
+        long flushMs = endTime - startTime;
+        flushCount.incrementAndGet();
+        flushRows.addAndGet(rows);
+        int index = 0;
+        while (index < FLUSH_MS_BOUNDS.length && flushMs > FLUSH_MS_BOUNDS[index]) {
+            index ++;
+        }
+        flushMsHistogram.incrementAndGet(index);
+        long interval = Math.max(1, endTime - lastFlushTime);
+        rowsPerSec = rows * 1000.0 / interval;
+        lastFlushTime = endTime;
+        lastFlushMs = flushMs;
+    }
+
+    void highWater() {
+        highWaterCount.incrementAndGet();
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public int getWaitChangeSize() {
+        return waitChangeSize.getAsInt();
+    }
+
+    public int getWaitSaveSize() {
+        return waitSaveSize.getAsInt();
+    }
+
+    /**
+     * 等待写入的数量 (新增/删除 + 修改)
+     */
+    public int getQueueDepth() {
+        return getWaitChangeSize() + getWaitSaveSize();
+    }
+
+    /**
+     * 最早一条未写入数据的等待时间, 没有时为0
+     */
+    public long getOldestDirtyAgeMs() {
+        long time = oldestDirtyTime.getAsLong();
+        return time <= 0 ? 0 : Math.max(0, System.currentTimeMillis() - time);
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    public long getFlushRows() {
+        return flushRows.get();
+    }
+
+    /**
+     * 最近一次写入的每秒行数
+     */
+    public double getRowsPerSec() {
+        return rowsPerSec;
+    }
+
+    public long getLastFlushTime() {
+        return lastFlushTime;
+    }
+
+    public long getLastFlushMs() {
+        return lastFlushMs;
+    }
+
+    public long getHighWaterCount() {
+        return highWaterCount.get();
+    }
+
+    /**
+     * 写入耗时分布, 下标对应FLUSH_MS_BOUNDS
+     */
+    public long[] getFlushMsHistogram() {
+        long[] histogram = new long[flushMsHistogram.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = flushMsHistogram.get(i);
+        }
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncCacheStatistics{" +
+                "tableName='" + tableName + '\'' +
+                ", waitChangeSize=" + getWaitChangeSize() +
+                ", waitSaveSize=" + getWaitSaveSize() +
+                ", oldestDirtyAgeMs=" + getOldestDirtyAgeMs() +
+                ", flushCount=" + getFlushCount() +
+                ", flushRows=" + getFlushRows() +
+                ", rowsPerSec=" + getRowsPerSec() +
+                ", lastFlushMs=" + getLastFlushMs() +
+                ", highWaterCount=" + getHighWaterCount() +
+                '}';
+    }
+
+}
@@ -0,0 +1,223 @@
+package com.swingfrog.summer.db.repository;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存仓库的内存二级索引, 列值 -> 主键集合, 数值列使用有序索引支持范围查询
+ * 某个值的主键集合从数据库加载完整后标记为完成, 完成标记过期后释放该值的索引, 整张表加载后所有值都视为完成
+ */
+class CacheIndex<K> {
+
+    private final TableMeta.ColumnMeta columnMeta;
+    private final boolean sorted;
+    private final Map<Object, Set<K>> buckets;
+    private final ConcurrentMap<K, Object> values = Maps.newConcurrentMap();
+    private final Cache<Object, Boolean> finishValues;
+    private volatile boolean complete;
+    private volatile boolean loading;
+
+    CacheIndex(TableMeta.ColumnMeta columnMeta, boolean sorted, long expireTime) {
+        this.columnMeta = columnMeta;
+        this.sorted = sorted;
+        this.buckets = sorted ? new ConcurrentSkipListMap<>() : Maps.newConcurrentMap();
+        this.finishValues = CacheBuilder.newBuilder()
+                .expireAfterAccess(expireTime, TimeUnit.MILLISECONDS)
+                .removalListener(notification -> {
+                    if (notification.wasEvicted()) {
+                        release(notification.getKey());
+                    }
+                })
+                .build();
+    }
+
+    static boolean isSortable(TableMeta.ColumnMeta columnMeta) {
+        Class<?> type = columnMeta.getField().getType();
+        return columnMeta.isIntNumber() || type == float.class || type == double.class
+                || type == Float.class || type == Double.class;
+    }
+
+    TableMeta.ColumnMeta getColumnMeta() {
+        return columnMeta;
+    }
+
+    boolean isSorted() {
+        return sorted;
+    }
+
+    /**
+     * 统一数值类型, 避免Integer和Long等作为键时不相等
+     */
+    Object normalize(Object value) {
+        if (value instanceof Number) {
+            if (columnMeta.isIntNumber()) {
+                return ((Number) value).longValue();
+            }
+            if (sorted) {
+                return ((Number) value).doubleValue();
+            }
+        }
+        if (sorted && value instanceof String) {
+            return columnMeta.isIntNumber() ? Long.valueOf((String) value) : Double.valueOf((String) value);
+        }
+        return value;
+    }
+
+    void put(K primaryKey, Object value) {
+        Object key = normalize(value);
+        if (key == null || key.equals(values.get(primaryKey))) {
+            return;
+        }
+        synchronized (this) {
+            Object old = values.put(primaryKey, key);
+            if (old != null && !old.equals(key)) {
+                removeFromBucket(old, primaryKey);
+            }
+            buckets.computeIfAbsent(key, k -> Sets.newConcurrentHashSet()).add(primaryKey);
+        }
+    }
+
+    void remove(K primaryKey) {
+        if (!values.containsKey(primaryKey)) {
+            return;
+        }
+        synchronized (this) {
+            Object old = values.remove(primaryKey);
+            if (old != null) {
+                removeFromBucket(old, primaryKey);
+            }
+        }
+    }
+
+    /**
+     * 实体从缓存中淘汰, 值未完成的索引不再需要保留
+     */
+    void evict(K primaryKey) {
+        Object value = values.get(primaryKey);
+        if (value != null && !loading && !isFinish(value)) {
+            synchronized (this) {
+                if (values.remove(primaryKey, value)) {
+                    removeFromBucket(value, primaryKey);
+                }
+            }
+        }
+    }
+
+    /**
+     * 从数据库加载的主键, 已经在索引中的以内存中的值为准
+     */
+    void load(Object value, Collection<K> primaryKeys) {
+        Object key = normalize(value);
+        synchronized (this) {
+            for (K primaryKey : primaryKeys) {
+                if (values.putIfAbsent(primaryKey, key) == null) {
+                    buckets.computeIfAbsent(key, k -> Sets.newConcurrentHashSet()).add(primaryKey);
+                }
+            }
+        }
+    }
+
+    private void removeFromBucket(Object key, K primaryKey) {
+        Set<K> bucket = buckets.get(key);
+        if (bucket != null) {
+            bucket.remove(primaryKey);
+            if (bucket.isEmpty() && (complete || finishValues.getIfPresent(key) == null)) {
+                buckets.remove(key);
+            }
+        }
+    }
+
+    private synchronized void release(Object key) {
+        if (complete || loading) {
+            return;
+        }
+        Set<K> bucket = buckets.remove(key);
+        if (bucket != null) {
+            bucket.forEach(primaryKey -> values.remove(primaryKey, key));
+        }
+    }
+
+    boolean isFinish(Object value) {
+        return complete || finishValues.getIfPresent(normalize(value)) != null;
+    }
+
+    void finish(Object value) {
+        finishValues.put(normalize(value), Boolean.TRUE);
+    }
+
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * 整张表加载期间保留已加载的主键, 加载成功后才标记为完成
+     */
+    void startLoad() {
+        loading = true;
+    }
+
+    void complete() {
+        complete = true;
+        loading = false;
+    }
+
+    void incomplete() {
+        complete = false;
+        loading = false;
+    }
+
+    Set<K> get(Object value) {
+        Set<K> bucket = buckets.get(normalize(value));
+        return bucket == null ? Collections.emptySet() : Collections.unmodifiableSet(bucket);
+    }
+
+    /**
+     * 有序索引的范围查询, 边界为null表示不限制, 只有整张表加载完成后结果才完整
+     */
+    List<K> range(Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        if (!sorted) {
+            throw new UnsupportedOperationException(String.format("column[%s] index not sorted", columnMeta.getName()));
+        }
+        NavigableMap<Object, Set<K>> map = (NavigableMap<Object, Set<K>>) buckets;
+        if (from != null) {
+            map = map.tailMap(normalize(from), fromInclusive);
+        }
+        if (to != null) {
+            map = map.headMap(normalize(to), toInclusive);
+        }
+        List<K> list = Lists.newArrayList();
+        map.values().forEach(list::addAll);
+        return list;
+    }
+
+    /**
+     * 按顺序遍历有序索引的主键集合, 从from(包含)开始, 用于按索引列排序的分页
+     */
+    Collection<Set<K>> buckets(Object from, boolean desc) {
+        if (!sorted) {
+            throw new UnsupportedOperationException(String.format("column[%s] index not sorted", columnMeta.getName()));
+        }
+        NavigableMap<Object, Set<K>> map = (NavigableMap<Object, Set<K>>) buckets;
+        if (desc) {
+            map = map.descendingMap();
+        }
+        if (from != null) {
+            map = map.tailMap(normalize(from), true);
+        }
+        return map.values();
+    }
+
+}
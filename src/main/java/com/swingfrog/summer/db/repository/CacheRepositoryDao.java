@@ -2,53 +2,181 @@ package com.swingfrog.summer.db.repository;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import com.swingfrog.summer.util.StringUtil;
+import com.google.common.util.concurrent.Striped;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public abstract class CacheRepositoryDao<T, K> extends RepositoryDao<T, K> {
 
     private static final Logger log = LoggerFactory.getLogger(CacheRepositoryDao.class);
 
-    private static final String PREFIX = "CacheRepositoryDao";
-    private T EMPTY;
-    private final Cache<K, T> cache = CacheBuilder.newBuilder()
-            .expireAfterAccess(expireTime(), TimeUnit.MILLISECONDS)
+    private static final int LOCK_STRIPES = 64;
+    private static final long DEFAULT_EMPTY_EXPIRE_TIME = TimeUnit.MINUTES.toMillis(1);
+    private static final long DEFAULT_EMPTY_MAXIMUM_SIZE = 10000;
+    private final Cache<K, T> cache = newCache();
+    private final Cache<K, Boolean> emptyCache = CacheBuilder.newBuilder()
+            .expireAfterWrite(emptyExpireTime(), TimeUnit.MILLISECONDS)
+            .maximumSize(emptyMaximumSize())
+            .recordStats()
             .build();
-    private final Map<String, Cache<Object, Set<K>>> cachePkMap = Maps.newHashMap();
-    private final Map<String, Cache<Object, Boolean>> cachePkFinishMap = Maps.newHashMap();
+    private final Map<String, CacheIndex<K>> indexMap = Maps.newHashMap();
     private final AtomicLong findAllTime = new AtomicLong(0);
+    private final ConcurrentMap<K, CompletableFuture<T>> loadingMap = new ConcurrentHashMap<>();
+    private final Striped<Lock> primaryKeyLocks = Striped.lock(LOCK_STRIPES);
+    private final Striped<Lock> indexLocks = Striped.lock(LOCK_STRIPES);
+    private final Object listLock = new Object();
     private final long expireTime = expireTime();
 
     protected abstract long expireTime();
 
+    /**
+     * 缓存的最大数量, 0为不限制
+     */
+    protected long maximumSize() {
+        return 0;
+    }
+
+    /**
+     * 缓存的最大权重, 按weigh估算实体占用的字节数, 大于0时代替maximumSize
+     */
+    protected long maximumWeight() {
+        return 0;
+    }
+
+    /**
+     * 估算实体占用的字节数, 只在放入缓存时计算
+     */
+    protected int weigh(T obj) {
+        int size = 16;
+        for (TableMeta.ColumnMeta columnMeta : tableMeta.getColumns()) {
+            try {
+                size += estimateSize(columnMeta.getField().get(obj));
+            } catch (IllegalAccessException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 不存在的主键的缓存时间
+     */
+    protected long emptyExpireTime() {
+        return Math.min(expireTime(), DEFAULT_EMPTY_EXPIRE_TIME);
+    }
+
+    /**
+     * 不存在的主键的最大缓存数量
+     */
+    protected long emptyMaximumSize() {
+        return DEFAULT_EMPTY_MAXIMUM_SIZE;
+    }
+
+    private Cache<K, T> newCache() {
+        CacheBuilder<K, T> builder = CacheBuilder.newBuilder()
+                .expireAfterAccess(expireTime(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .removalListener((RemovalNotification<K, T> notification) -> {
+                    if (notification.wasEvicted()) {
+                        indexMap.values().forEach(index -> index.evict(notification.getKey()));
+                    }
+                });
+        if (maximumWeight() > 0) {
+            builder.maximumWeight(maximumWeight()).weigher((K key, T value) -> weigh(value));
+        } else if (maximumSize() > 0) {
+            builder.maximumSize(maximumSize());
+        }
+        return builder.build();
+    }
+
+    private static int estimateSize(Object value) {
+        if (value == null) {
+            return 4;
+        }
+        if (value instanceof String) {
+            return 40 + ((String) value).length() * 2;
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return 16;
+        }
+        if (value instanceof Date) {
+            return 24;
+        }
+        if (value instanceof Collection) {
+            int size = 32;
+            for (Object element : (Collection<?>) value) {
+                size += 8 + estimateSize(element);
+            }
+            return size;
+        }
+        if (value instanceof Map) {
+            int size = 48;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += 32 + estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        return 64;
+    }
+
+    /**
+     * 缓存的命中/未命中/淘汰统计
+     */
+    public CacheStats getCacheStats() {
+        return cache.stats();
+    }
+
+    /**
+     * 不存在的主键的缓存统计
+     */
+    public CacheStats getEmptyCacheStats() {
+        return emptyCache.stats();
+    }
+
+    @Override
+    protected long dirtyTrackingExpireTime() {
+        return expireTime;
+    }
+
+    /**
+     * 缓存中的实体会被修改后写回数据库, 不从可能延迟的从库加载
+     */
+    @Override
+    protected boolean readFromReplica() {
+        return false;
+    }
+
     @Override
     void init() {
         super.init();
-        try {
-            EMPTY = getEntityClass().newInstance();
-        } catch (InstantiationException | IllegalAccessException e) {
-            throw new RuntimeException("cache repository EMPTY not null");
-        }
-        tableMeta.getCacheKeys().forEach(columnMeta -> {
-            cachePkMap.put(columnMeta.getName(),
-                    CacheBuilder.newBuilder()
-                            .expireAfterAccess(expireTime, TimeUnit.MILLISECONDS)
-                            .build());
-            cachePkFinishMap.put(columnMeta.getName(),
-                    CacheBuilder.newBuilder()
-                            .expireAfterAccess(expireTime, TimeUnit.MILLISECONDS)
-                            .build());
-        });
+        tableMeta.getCacheKeys().forEach(columnMeta ->
+                indexMap.put(columnMeta.getName(), new CacheIndex<>(columnMeta, CacheIndex.isSortable(columnMeta), expireTime)));
+        tableMeta.getIndexKeys().stream()
+                .filter(CacheIndex::isSortable)
+                .forEach(columnMeta -> indexMap.putIfAbsent(columnMeta.getName(), new CacheIndex<>(columnMeta, true, expireTime)));
     }
 
     @Override
@@ -113,74 +241,236 @@ public abstract class CacheRepositoryDao<T, K> extends RepositoryDao<T, K> {
 
     @Override
     public boolean save(T obj) {
-        return super.save(obj);
+        boolean ok = super.save(obj);
+        saveCache(obj);
+        return ok;
     }
 
     @Override
     public void save(List<T> objs) {
         super.save(objs);
+        objs.forEach(this::saveCache);
     }
 
     @Override
     public T get(K primaryKey) {
         T obj = cache.getIfPresent(primaryKey);
-        if (obj == null) {
-            synchronized (StringUtil.getString(PREFIX, tableMeta.getName(), "get", primaryKey)) {
-                obj = cache.getIfPresent(primaryKey);
-                if (obj == null) {
-                    obj = super.get(primaryKey);
-                    if (obj != null) {
-                        addCache(primaryKey, obj);
-                    } else {
-                        addCache(primaryKey, EMPTY);
-                    }
+        if (obj != null || emptyCache.getIfPresent(primaryKey) != null) {
+            return obj;
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<T> loading = loadingMap.putIfAbsent(primaryKey, future);
+        if (loading != null) {
+            return loading.join();
+        }
+        try {
+            obj = cache.getIfPresent(primaryKey);
+            if (obj == null && emptyCache.getIfPresent(primaryKey) == null) {
+                obj = load(primaryKey);
+                if (obj != null) {
+                    addCache(primaryKey, obj);
+                } else {
+                    emptyCache.put(primaryKey, Boolean.TRUE);
                 }
             }
-        } else if (obj == EMPTY) {
-            return null;
+            future.complete(obj);
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingMap.remove(primaryKey, future);
         }
         return obj;
     }
 
+    /**
+     * 缓存命中或其他线程正在加载时不经过数据库线程池
+     */
+    @Override
+    public CompletableFuture<T> getAsync(K primaryKey) {
+        Objects.requireNonNull(primaryKey, "cache repository get primary key not null");
+        T obj = cache.getIfPresent(primaryKey);
+        if (obj != null || emptyCache.getIfPresent(primaryKey) != null) {
+            return CompletableFuture.completedFuture(obj);
+        }
+        CompletableFuture<T> loading = loadingMap.get(primaryKey);
+        if (loading != null) {
+            return loading.thenApply(Function.identity());
+        }
+        return super.getAsync(primaryKey);
+    }
+
+    public long preload() {
+        return preload(1);
+    }
+
+    /**
+     * 流式加载整张表到缓存并建立缓存键索引, 分表时按分表并行加载, 整数主键时按主键范围并行加载, 返回加载的行数, 失败返回-1
+     */
+    public long preload(int parallel) {
+        long startTime = System.currentTimeMillis();
+        indexMap.values().forEach(CacheIndex::startLoad);
+        Consumer<T> consumer = this::addCache;
+        long count;
+        if (isSharded()) {
+            count = stream(parallel, consumer);
+        } else if (parallel > 1 && tableMeta.getPrimaryColumn().isIntNumber()) {
+            count = preloadRange(parallel, consumer);
+        } else {
+            count = stream(consumer);
+        }
+        if (count < 0) {
+            indexMap.values().forEach(CacheIndex::incomplete);
+            log.error("cache repository table[{}] preload failure", tableMeta.getName());
+            return count;
+        }
+        indexMap.values().forEach(CacheIndex::complete);
+        if (maximumSize() <= 0 && maximumWeight() <= 0) {
+            findAllTime.set(startTime);
+        }
+        log.info("cache repository table[{}] preload count[{}] parallel[{}] cost[{}]ms", tableMeta.getName(), count, parallel, System.currentTimeMillis() - startTime);
+        return count;
+    }
+
+    private long preloadRange(int parallel, Consumer<T> consumer) {
+        Object min = getValue(SqlBuilder.getMinPrimaryKey(tableMeta));
+        Object max = getValue(SqlBuilder.getMaxPrimaryKey(tableMeta));
+        if (min == null || max == null) {
+            return 0;
+        }
+        long minPk = Long.parseLong(min.toString());
+        long maxPk = Long.parseLong(max.toString());
+        long step = (maxPk - minPk) / parallel + 1;
+        String sql = SqlBuilder.getSelectRange(tableMeta);
+        ExecutorService executor = Executors.newFixedThreadPool(parallel, new DefaultThreadFactory("CacheRepositoryPreload"));
+        try {
+            List<Future<Long>> futures = Lists.newArrayList();
+            for (long start = minPk; start <= maxPk; start += step) {
+                long from = start;
+                long to = Math.min(maxPk, start + step - 1);
+                futures.add(executor.submit(() -> stream(sql, consumer, from, to)));
+            }
+            long count = 0;
+            for (Future<Long> future : futures) {
+                long part = future.get();
+                if (part < 0) {
+                    return -1;
+                }
+                count += part;
+            }
+            return count;
+        } catch (InterruptedException | ExecutionException e) {
+            log.error(e.getMessage(), e);
+            return -1;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    void preloadOnInit() {
+        if (tableMeta.isPreload()) {
+            preload(tableMeta.getPreloadParallel());
+        }
+    }
+
+    /**
+     * 缓存命中的直接返回, 未命中的合并为IN查询加载, 结果按主键顺序
+     */
+    @Override
+    public List<T> getAll(Collection<K> primaryKeys) {
+        Objects.requireNonNull(primaryKeys, "cache repository get all primary keys not null");
+        Map<K, T> map = Maps.newHashMapWithExpectedSize(primaryKeys.size());
+        Set<K> misses = Sets.newLinkedHashSet();
+        for (K primaryKey : primaryKeys) {
+            T obj = cache.getIfPresent(primaryKey);
+            if (obj != null) {
+                map.put(primaryKey, obj);
+            } else if (emptyCache.getIfPresent(primaryKey) == null) {
+                misses.add(primaryKey);
+            }
+        }
+        if (!misses.isEmpty()) {
+            Map<K, T> loaded = loadAll(misses);
+            for (K primaryKey : misses) {
+                T obj = loaded.get(primaryKey);
+                if (obj != null) {
+                    addCache(primaryKey, obj);
+                    map.put(primaryKey, cache.asMap().getOrDefault(primaryKey, obj));
+                } else {
+                    emptyCache.put(primaryKey, Boolean.TRUE);
+                }
+            }
+        }
+        return primaryKeys.stream().map(map::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    /**
+     * 缓存未命中时加载实体
+     */
+    protected T load(K primaryKey) {
+        return super.get(primaryKey);
+    }
+
+    /**
+     * 缓存未命中时批量加载实体, 返回存在的实体
+     */
+    protected Map<K, T> loadAll(Collection<K> primaryKeys) {
+        return super.getAll(primaryKeys).stream()
+                .collect(Collectors.toMap(obj -> (K) TableValueBuilder.getPrimaryKeyValue(tableMeta, obj), obj -> obj));
+    }
+
+    /**
+     * 数据库中可能还不存在, 但需要出现在查询结果中的主键
+     */
+    protected Collection<K> listPendingPrimaryKey() {
+        return Collections.emptyList();
+    }
+
     @Override
     public List<T> list(String field, Object value) {
-        if (tableMeta.getCacheKeys().contains(tableMeta.getColumnMetaMap().get(field))) {
-            return listPrimaryValueByCacheKey(field, value).stream().map(this::get).filter(Objects::nonNull).collect(Collectors.toList());
+        CacheIndex<K> index = indexMap.get(field);
+        if (index != null) {
+            return getAll(listPrimaryKeyByIndex(index, value));
         }
         return list(ImmutableMap.of(field, value));
     }
 
     @Override
     public List<T> list(Map<String, Object> optional) {
-        LinkedList<Set<K>> pkList = Lists.newLinkedList();
+        List<Set<K>> pkList = Lists.newArrayList();
         Map<String, Object> normal = Maps.newHashMap();
         optional.forEach((key, value) -> {
-            if (tableMeta.getCacheKeys().contains(tableMeta.getColumnMetaMap().get(key))) {
-                pkList.add(listPrimaryValueByCacheKey(key, value));
+            CacheIndex<K> index = indexMap.get(key);
+            if (index != null) {
+                pkList.add(listPrimaryKeyByIndex(index, value));
             } else {
                 normal.put(key, value);
             }
         });
         List<T> list;
         if (pkList.isEmpty()) {
-            super.listPrimaryKey(optional).forEach(this::get);
-            list = cache.asMap().values().stream()
-                    .filter(obj -> obj != EMPTY)
-                    .collect(Collectors.toList());
+            Set<K> primaryKeys = Sets.newLinkedHashSet(super.listPrimaryKey(optional));
+            primaryKeys.addAll(listPendingPrimaryKey());
+            Set<T> objs = Sets.newIdentityHashSet();
+            objs.addAll(getAll(primaryKeys));
+            objs.addAll(cache.asMap().values());
+            list = Lists.newArrayList(objs);
         } else {
             if (pkList.size() == 1) {
-                list = pkList.getFirst().stream().map(this::get).filter(Objects::nonNull).collect(Collectors.toList());
+                list = getAll(pkList.get(0));
             } else {
-                Set<K> first = Sets.newHashSet(pkList.removeFirst());
-                first.removeIf(obj -> {
-                    for (Set<K> pk : pkList) {
-                        if (!pk.contains(obj)) {
+                pkList.sort(Comparator.comparingInt(Set::size));
+                Set<K> first = Sets.newLinkedHashSet(pkList.get(0));
+                List<Set<K>> others = pkList.subList(1, pkList.size());
+                first.removeIf(pk -> {
+                    for (Set<K> pkSet : others) {
+                        if (!pkSet.contains(pk)) {
                             return true;
                         }
                     }
                     return false;
                 });
-                list = first.stream().map(this::get).filter(Objects::nonNull).collect(Collectors.toList());
+                list = getAll(first);
             }
         }
         if (normal.size() > 0) {
@@ -196,13 +486,22 @@ public abstract class CacheRepositoryDao<T, K> extends RepositoryDao<T, K> {
         return list;
     }
 
+    /**
+     * 限制了缓存大小时缓存中不一定是整张表, 每次从数据库查询主键
+     */
     @Override
     public List<T> list() {
+        if (maximumSize() > 0 || maximumWeight() > 0) {
+            Set<K> primaryKeys = Sets.newLinkedHashSet(listPrimaryKey());
+            primaryKeys.addAll(listPendingPrimaryKey());
+            return getAll(primaryKeys);
+        }
         long time = System.currentTimeMillis();
         if (time - expireTime() >= findAllTime.get()) {
-            synchronized (StringUtil.getString(PREFIX, tableMeta.getName(), "list")) {
+            synchronized (listLock) {
                 if (time - expireTime() >= findAllTime.get()) {
-                    listPrimaryKey().forEach(this::get);
+                    getAll(listPrimaryKey());
+                    getAll(listPendingPrimaryKey());
                 }
             }
         }
@@ -213,21 +512,158 @@ public abstract class CacheRepositoryDao<T, K> extends RepositoryDao<T, K> {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * 条件能由索引确定候选主键时在内存中过滤排序分页, 按完整有序索引列排序时按索引顺序遍历到够一页为止,
+     * 否则从数据库查询主键再从缓存获取, 未写入数据库的实体只在不使用OFFSET时合并
+     */
+    @Override
+    public List<T> list(RepositoryQuery query) {
+        Objects.requireNonNull(query, "repository list query not null");
+        query.check(tableMeta);
+        Comparator<T> comparator = query.comparator(tableMeta);
+        Set<K> candidates = null;
+        for (RepositoryQuery.Condition condition : query.getConditions()) {
+            Collection<K> primaryKeys = listPrimaryKeyByCondition(condition);
+            if (primaryKeys == null) {
+                continue;
+            }
+            if (candidates == null) {
+                candidates = Sets.newLinkedHashSet(primaryKeys);
+            } else {
+                candidates.retainAll(primaryKeys instanceof Set ? primaryKeys : Sets.newHashSet(primaryKeys));
+            }
+        }
+        if (candidates != null) {
+            return page(query, getAll(candidates).stream()
+                    .filter(obj -> query.match(tableMeta, obj))
+                    .sorted(comparator), comparator);
+        }
+        List<T> list = listByOrderIndex(query, comparator);
+        if (list != null) {
+            return list;
+        }
+        Set<K> primaryKeys = Sets.newLinkedHashSet(super.listPrimaryKey(query));
+        if (query.getOffset() > 0) {
+            return getAll(primaryKeys).stream()
+                    .filter(obj -> query.match(tableMeta, obj))
+                    .sorted(comparator)
+                    .collect(Collectors.toList());
+        }
+        primaryKeys.addAll(listPendingPrimaryKey());
+        return page(query, getAll(primaryKeys).stream()
+                .filter(obj -> query.match(tableMeta, obj))
+                .sorted(comparator), comparator);
+    }
+
+    private Collection<K> listPrimaryKeyByCondition(RepositoryQuery.Condition condition) {
+        CacheIndex<K> index = indexMap.get(condition.getField());
+        if (index == null) {
+            return null;
+        }
+        List<Object> values = condition.getValues();
+        switch (condition.getOperator()) {
+            case EQ:
+                return listPrimaryKeyByIndex(index, values.get(0));
+            case IN:
+                Set<K> primaryKeys = Sets.newLinkedHashSet();
+                values.forEach(value -> primaryKeys.addAll(listPrimaryKeyByIndex(index, value)));
+                return primaryKeys;
+            case LT:
+                return listPrimaryKeyByRange(condition.getField(), null, false, values.get(0), false);
+            case LE:
+                return listPrimaryKeyByRange(condition.getField(), null, false, values.get(0), true);
+            case GT:
+                return listPrimaryKeyByRange(condition.getField(), values.get(0), false, null, false);
+            case GE:
+                return listPrimaryKeyByRange(condition.getField(), values.get(0), true, null, false);
+            case BETWEEN:
+                return listPrimaryKeyByRange(condition.getField(), values.get(0), true, values.get(1), true);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 第一个排序列是完整的有序索引且不能为null时, 按索引顺序逐个值取实体, 够offset + limit条后停止
+     */
+    private List<T> listByOrderIndex(RepositoryQuery query, Comparator<T> comparator) {
+        List<RepositoryQuery.Order> orders = query.listOrder(tableMeta);
+        if (orders.isEmpty()) {
+            return null;
+        }
+        RepositoryQuery.Order first = orders.get(0);
+        CacheIndex<K> index = indexMap.get(first.getField());
+        if (index == null || !index.isSorted() || !index.isComplete() || !index.getColumnMeta().getField().getType().isPrimitive()) {
+            return null;
+        }
+        T after = (T) query.getAfter();
+        Object from = after == null ? null : TableValueBuilder.getColumnValue(index.getColumnMeta(), after);
+        long need = query.getLimit() < 0 ? Long.MAX_VALUE : (long) query.getOffset() + query.getLimit();
+        List<T> list = Lists.newArrayList();
+        for (Set<K> bucket : index.buckets(from, first.isDesc())) {
+            if (list.size() >= need) {
+                break;
+            }
+            getAll(Lists.newArrayList(bucket)).stream()
+                    .filter(obj -> query.match(tableMeta, obj))
+                    .filter(obj -> after == null || comparator.compare(obj, after) > 0)
+                    .sorted(comparator)
+                    .forEach(list::add);
+        }
+        return list.stream()
+                .skip(query.getOffset())
+                .limit(query.getLimit() < 0 ? Long.MAX_VALUE : query.getLimit())
+                .collect(Collectors.toList());
+    }
+
+    private List<T> page(RepositoryQuery query, Stream<T> stream, Comparator<T> comparator) {
+        T after = (T) query.getAfter();
+        if (after != null) {
+            stream = stream.filter(obj -> comparator.compare(obj, after) > 0);
+        }
+        return stream.skip(query.getOffset())
+                .limit(query.getLimit() < 0 ? Long.MAX_VALUE : query.getLimit())
+                .collect(Collectors.toList());
+    }
+
     protected Set<K> listPrimaryValueByCacheKey(String column, Object cacheValue) {
-        Cache<Object, Set<K>> cachePk = cachePkMap.get(column);
-        Set<K> pkSet = cachePk.getIfPresent(cacheValue);
-        if (cachePkFinishMap.get(column).getIfPresent(cacheValue) == null || pkSet == null) {
-            synchronized (StringUtil.getString(PREFIX, tableMeta.getName(), "CacheKey", column, cacheValue)) {
-                pkSet = cachePk.getIfPresent(cacheValue);
-                if (pkSet == null) {
-                    pkSet = Sets.newConcurrentHashSet();
-                    cachePk.put(cacheValue, pkSet);
-                }
+        return listPrimaryKeyByIndex(indexMap.get(column), cacheValue);
+    }
+
+    /**
+     * 按索引查询等于value的主键, 该值未加载完整时从数据库加载一次, 之后由增删改维护
+     */
+    private Set<K> listPrimaryKeyByIndex(CacheIndex<K> index, Object value) {
+        if (index.isFinish(value)) {
+            return index.get(value);
+        }
+        Lock lock = indexLocks.get(index.normalize(value));
+        lock.lock();
+        try {
+            if (!index.isFinish(value)) {
+                index.load(value, listPrimaryKey(ImmutableMap.of(index.getColumnMeta().getName(), value)));
+                getAll(listPendingPrimaryKey());
+                index.finish(value);
             }
-            cachePkFinishMap.get(column).put(cacheValue, true);
-            pkSet.addAll(listPrimaryKey(ImmutableMap.of(column, cacheValue)));
+            return index.get(value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 有序索引的范围查询, 边界为null表示不限制, 索引不完整(整张表未预加载)时返回null
+     */
+    protected List<K> listPrimaryKeyByRange(String column, Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+        CacheIndex<K> index = indexMap.get(column);
+        if (index == null || !index.isSorted() || !index.isComplete()) {
+            return null;
         }
-        return pkSet;
+        return index.range(from, fromInclusive, to, toInclusive);
+    }
+
+    protected T getCache(K primaryKey) {
+        return cache.getIfPresent(primaryKey);
     }
 
     protected void addCache(T obj) {
@@ -235,41 +671,47 @@ public abstract class CacheRepositoryDao<T, K> extends RepositoryDao<T, K> {
     }
 
     protected void addCache(K primaryKey, T obj) {
-        synchronized (StringUtil.getString(PREFIX, tableMeta.getName(), "addCache", primaryKey)) {
-            T old = cache.getIfPresent(primaryKey);
-            if (old == null || old == EMPTY) {
-                cache.put(primaryKey, obj);
-            }
-            if (obj == EMPTY) {
-                return;
-            }
-            tableMeta.getCacheKeys().forEach(columnMeta -> {
-                Object cacheValue = TableValueBuilder.getColumnValue(columnMeta, obj);
-                Cache<Object, Set<K>> cachePk = cachePkMap.get(columnMeta.getName());
-                Set<K> pkSet = cachePk.getIfPresent(cacheValue);
-                cachePkFinishMap.get(columnMeta.getName()).getIfPresent(cacheValue);
-                if (pkSet == null) {
-                    synchronized (StringUtil.getString(PREFIX, tableMeta.getName(), "CacheKey", columnMeta.getName(), cacheValue)) {
-                        pkSet = cachePk.getIfPresent(cacheValue);
-                        if (pkSet == null) {
-                            pkSet = Sets.newConcurrentHashSet();
-                            cachePk.put(cacheValue, pkSet);
-                        }
-                    }
-                }
-                pkSet.add(primaryKey);
-            });
+        Lock lock = primaryKeyLocks.get(primaryKey);
+        lock.lock();
+        T cacheObj;
+        try {
+            emptyCache.invalidate(primaryKey);
+            cacheObj = cache.asMap().putIfAbsent(primaryKey, obj);
+        } finally {
+            lock.unlock();
+        }
+        index(primaryKey, cacheObj == null ? obj : cacheObj);
+    }
+
+    /**
+     * 实体修改后更新索引, 缓存中是其他实例时以缓存为准
+     */
+    protected void saveCache(T obj) {
+        K primaryKey = (K) TableValueBuilder.getPrimaryKeyValue(tableMeta, obj);
+        T cacheObj = cache.getIfPresent(primaryKey);
+        if (cacheObj == null || cacheObj == obj) {
+            index(primaryKey, obj);
         }
     }
 
+    private void index(K primaryKey, T obj) {
+        indexMap.values().forEach(index -> index.put(primaryKey, TableValueBuilder.getColumnValue(index.getColumnMeta(), obj)));
+    }
+
     protected void removeCache(T obj) {
         removeCacheByPrimaryKey((K) TableValueBuilder.getPrimaryKeyValue(tableMeta, obj));
     }
 
     protected void removeCacheByPrimaryKey(K primaryKey) {
-        synchronized (StringUtil.getString(PREFIX, tableMeta.getName(), "addCache", primaryKey)) {
-            cache.put(primaryKey, EMPTY);
+        Lock lock = primaryKeyLocks.get(primaryKey);
+        lock.lock();
+        try {
+            cache.invalidate(primaryKey);
+            emptyCache.put(primaryKey, Boolean.TRUE);
+        } finally {
+            lock.unlock();
         }
+        indexMap.values().forEach(index -> index.remove(primaryKey));
     }
 
     protected boolean addByPrimaryKeyNotAddCache(T obj, K primaryKey) {
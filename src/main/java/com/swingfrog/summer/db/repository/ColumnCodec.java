@@ -0,0 +1,89 @@
+package com.swingfrog.summer.db.repository;
+
+import com.alibaba.fastjson.JSON;
+import com.swingfrog.summer.db.repository.annotation.ColumnFormat;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 二进制java bean列的编码, 第一个字节为标记(0原始json字节, 1 deflate压缩), 读取时按标记解码, 与列当前的格式无关
+ */
+public class ColumnCodec {
+
+    private static final byte RAW = 0;
+    private static final byte DEFLATE = 1;
+    private static final int DEFLATE_MIN_LENGTH = 256;
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
+    public static byte[] encode(Object value, ColumnFormat format) {
+        byte[] data = JSON.toJSONBytes(value);
+        if (format == ColumnFormat.DEFLATE && data.length >= DEFLATE_MIN_LENGTH) {
+            byte[] compressed = deflate(data);
+            if (compressed.length < data.length) {
+                return compressed;
+            }
+        }
+        byte[] bytes = new byte[data.length + 1];
+        bytes[0] = RAW;
+        System.arraycopy(data, 0, bytes, 1, data.length);
+        return bytes;
+    }
+
+    public static Object decode(byte[] bytes, Type type) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        switch (bytes[0]) {
+            case RAW:
+                return JSON.parseObject(Arrays.copyOfRange(bytes, 1, bytes.length), type);
+            case DEFLATE:
+                return JSON.parseObject(inflate(bytes), type);
+            default:
+                // 兼容改为二进制格式前写入的json文本
+                return JSON.parseObject(bytes, type);
+        }
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+        out.write(DEFLATE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] bytes) {
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(bytes, 1, bytes.length - 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("column data truncated");
+                }
+                out.write(buffer, 0, count);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+}
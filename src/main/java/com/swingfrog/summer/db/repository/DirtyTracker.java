@@ -0,0 +1,152 @@
+package com.swingfrog.summer.db.repository;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.swingfrog.summer.db.DataBaseMgr;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按主键保存实体各列的快照 (较长的字符串和二进制只保存哈希), 保存时只更新与快照不同的列
+ * 事务中的快照在提交后才生效, 事务失败时作废, 没有快照时更新全部列
+ */
+class DirtyTracker {
+
+    private static final int HASH_LENGTH = 64;
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final List<TableMeta.ColumnMeta> columns;
+    private final Cache<Object, Object[]> snapshotCache;
+    private final ThreadLocal<Map<Object, Object[]>> pending = new ThreadLocal<>();
+
+    DirtyTracker(TableMeta tableMeta, long expireTime) {
+        this.columns = tableMeta.getColumns();
+        this.snapshotCache = CacheBuilder.newBuilder()
+                .expireAfterAccess(expireTime, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    Object[] listColumnValue(Object obj) {
+        Object[] values = new Object[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = TableValueBuilder.getColumnValue(columns.get(i), obj);
+        }
+        return values;
+    }
+
+    Object[] snapshot(Object[] values) {
+        Object[] snapshot = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value instanceof String && ((String) value).length() > HASH_LENGTH) {
+                snapshot[i] = HASH.hashString((String) value, StandardCharsets.UTF_8);
+            } else if (value instanceof byte[]) {
+                snapshot[i] = HASH.hashBytes((byte[]) value);
+            } else if (value instanceof Date) {
+                snapshot[i] = ((Date) value).getTime();
+            } else {
+                snapshot[i] = value;
+            }
+        }
+        return snapshot;
+    }
+
+    BitSet listDirty(Object primaryKey, Object[] snapshot) {
+        Object[] old = getSnapshot(primaryKey);
+        BitSet dirty = new BitSet(columns.size());
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).isReadOnly()) {
+                continue;
+            }
+            if (old == null || !Objects.equals(old[i], snapshot[i])) {
+                dirty.set(i);
+            }
+        }
+        return dirty;
+    }
+
+    List<TableMeta.ColumnMeta> listColumn(BitSet dirty) {
+        List<TableMeta.ColumnMeta> list = Lists.newArrayList();
+        dirty.stream().forEach(i -> list.add(columns.get(i)));
+        return list;
+    }
+
+    Object[] listUpdateValue(BitSet dirty, Object[] values, Object primaryKey) {
+        Object[] args = new Object[dirty.cardinality() + 1];
+        int index = 0;
+        for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+            args[index ++] = values[i];
+        }
+        args[index] = primaryKey;
+        return args;
+    }
+
+    void load(Object primaryKey, Object obj) {
+        snapshotCache.put(primaryKey, snapshot(listColumnValue(obj)));
+    }
+
+    void refresh(Object primaryKey, Object[] snapshot) {
+        Map<Object, Object[]> map = pending.get();
+        if (map != null) {
+            map.put(primaryKey, snapshot);
+        } else if (DataBaseMgr.get().isTransaction()) {
+            snapshotCache.invalidate(primaryKey);
+        } else {
+            snapshotCache.put(primaryKey, snapshot);
+        }
+    }
+
+    void refresh(Object primaryKey, Object obj) {
+        refresh(primaryKey, snapshot(listColumnValue(obj)));
+    }
+
+    void invalidate(Object primaryKey) {
+        Map<Object, Object[]> map = pending.get();
+        if (map != null) {
+            map.put(primaryKey, null);
+        }
+        snapshotCache.invalidate(primaryKey);
+    }
+
+    boolean begin() {
+        if (pending.get() != null || DataBaseMgr.get().isTransaction()) {
+            return false;
+        }
+        pending.set(Maps.newHashMap());
+        return true;
+    }
+
+    void end(boolean commit) {
+        Map<Object, Object[]> map = pending.get();
+        pending.remove();
+        if (map == null) {
+            return;
+        }
+        map.forEach((primaryKey, snapshot) -> {
+            if (commit && snapshot != null) {
+                snapshotCache.put(primaryKey, snapshot);
+            } else {
+                snapshotCache.invalidate(primaryKey);
+            }
+        });
+    }
+
+    private Object[] getSnapshot(Object primaryKey) {
+        Map<Object, Object[]> map = pending.get();
+        if (map != null && map.containsKey(primaryKey)) {
+            return map.get(primaryKey);
+        }
+        return snapshotCache.getIfPresent(primaryKey);
+    }
+
+}
@@ -0,0 +1,155 @@
+package com.swingfrog.summer.db.repository;
+
+import com.alibaba.fastjson.JSON;
+import com.google.common.collect.Maps;
+import com.swingfrog.summer.db.repository.annotation.ColumnFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Type;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 实体访问器, 由EntityAccessorBuilder为每个实体生成子类, 直接调用getter/setter读写列值并从ResultSet填充实体
+ * 列序号0为主键, 之后按TableMeta.getColumns的顺序, 没有公开getter/setter的字段使用反射
+ */
+public abstract class EntityAccessor {
+
+    private static final Logger log = LoggerFactory.getLogger(EntityAccessor.class);
+
+    private Field[] fields;
+    private Type[] types;
+    private ColumnFormat[] formats;
+    private final Map<String, Integer> ordinalMap = Maps.newHashMap();
+
+    void init(List<TableMeta.ColumnMeta> columns) {
+        fields = new Field[columns.size()];
+        types = new Type[columns.size()];
+        formats = new ColumnFormat[columns.size()];
+        for (int i = 0; i < columns.size(); i++) {
+            TableMeta.ColumnMeta columnMeta = columns.get(i);
+            fields[i] = columnMeta.getField();
+            types[i] = columnMeta.getField().getGenericType();
+            formats[i] = columnMeta.getFormat();
+            ordinalMap.put(columnMeta.getName(), i);
+            ordinalMap.putIfAbsent(columnMeta.getName().toLowerCase(), i);
+        }
+    }
+
+    public abstract Object newInstance();
+
+    /**
+     * 写入数据库的列值, java bean按列的格式为json文本或二进制
+     */
+    public abstract Object getValue(Object obj, int ordinal);
+
+    public abstract Object[] listInsertValue(Object obj, Object primaryKey);
+
+    public abstract Object[] listUpdateValue(Object obj);
+
+    /**
+     * positions为每个列在结果集中的位置, 0表示结果集中没有该列
+     */
+    public abstract void populate(Object obj, ResultSet rs, int[] positions) throws SQLException;
+
+    public Object toBean(ResultSet rs, int[] positions) throws SQLException {
+        Object obj = newInstance();
+        populate(obj, rs, positions);
+        return obj;
+    }
+
+    public int[] getPositions(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int[] positions = new int[fields.length];
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            String label = metaData.getColumnLabel(i);
+            if (label == null || label.isEmpty()) {
+                label = metaData.getColumnName(i);
+            }
+            Integer ordinal = ordinalMap.get(label);
+            if (ordinal == null) {
+                ordinal = ordinalMap.get(label.toLowerCase());
+            }
+            if (ordinal != null) {
+                positions[ordinal] = i;
+            }
+        }
+        return positions;
+    }
+
+    protected Object getField(int ordinal, Object obj) {
+        try {
+            return fields[ordinal].get(obj);
+        } catch (IllegalAccessException e) {
+            log.error(e.getMessage(), e);
+            return null;
+        }
+    }
+
+    protected void setField(int ordinal, Object obj, Object value) {
+        try {
+            fields[ordinal].set(obj, value);
+        } catch (IllegalAccessException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * java bean列按格式转换为json文本或二进制
+     */
+    protected Object toColumn(Object value, int ordinal) {
+        if (formats[ordinal] == ColumnFormat.BINARY || formats[ordinal] == ColumnFormat.DEFLATE) {
+            return value == null ? null : ColumnCodec.encode(value, formats[ordinal]);
+        }
+        return JSON.toJSONString(value);
+    }
+
+    protected Object fromColumn(ResultSet rs, int position, int ordinal) throws SQLException {
+        if (formats[ordinal] == ColumnFormat.BINARY || formats[ordinal] == ColumnFormat.DEFLATE) {
+            return ColumnCodec.decode(rs.getBytes(position), types[ordinal]);
+        }
+        String text = rs.getString(position);
+        return text == null ? null : JSON.parseObject(text, types[ordinal]);
+    }
+
+    protected static Boolean readBoolean(ResultSet rs, int position) throws SQLException {
+        boolean value = rs.getBoolean(position);
+        return rs.wasNull() ? null : value;
+    }
+
+    protected static Byte readByte(ResultSet rs, int position) throws SQLException {
+        byte value = rs.getByte(position);
+        return rs.wasNull() ? null : value;
+    }
+
+    protected static Short readShort(ResultSet rs, int position) throws SQLException {
+        short value = rs.getShort(position);
+        return rs.wasNull() ? null : value;
+    }
+
+    protected static Integer readInteger(ResultSet rs, int position) throws SQLException {
+        int value = rs.getInt(position);
+        return rs.wasNull() ? null : value;
+    }
+
+    protected static Long readLong(ResultSet rs, int position) throws SQLException {
+        long value = rs.getLong(position);
+        return rs.wasNull() ? null : value;
+    }
+
+    protected static Float readFloat(ResultSet rs, int position) throws SQLException {
+        float value = rs.getFloat(position);
+        return rs.wasNull() ? null : value;
+    }
+
+    protected static Double readDouble(ResultSet rs, int position) throws SQLException {
+        double value = rs.getDouble(position);
+        return rs.wasNull() ? null : value;
+    }
+
+}
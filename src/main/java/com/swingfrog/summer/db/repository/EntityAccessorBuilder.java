@@ -0,0 +1,219 @@
+package com.swingfrog.summer.db.repository;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import javassist.ClassClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.LoaderClassPath;
+import javassist.bytecode.ClassFile;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 使用javassist为实体生成EntityAccessor子类, 生成的类与实体在同一个包中, 每个实体类只生成一次
+ */
+public class EntityAccessorBuilder {
+
+    private static final String SUFFIX = "$$EntityAccessor";
+
+    private static final Map<Class<?>, String[]> primitiveMap = ImmutableMap.<Class<?>, String[]>builder()
+            .put(boolean.class, new String[]{"Boolean", "getBoolean"})
+            .put(byte.class, new String[]{"Byte", "getByte"})
+            .put(short.class, new String[]{"Short", "getShort"})
+            .put(int.class, new String[]{"Integer", "getInt"})
+            .put(long.class, new String[]{"Long", "getLong"})
+            .put(float.class, new String[]{"Float", "getFloat"})
+            .put(double.class, new String[]{"Double", "getDouble"})
+            .build();
+
+    private static final Map<Class<?>, String> wrapperMap = ImmutableMap.<Class<?>, String>builder()
+            .put(Boolean.class, "readBoolean")
+            .put(Byte.class, "readByte")
+            .put(Short.class, "readShort")
+            .put(Integer.class, "readInteger")
+            .put(Long.class, "readLong")
+            .put(Float.class, "readFloat")
+            .put(Double.class, "readDouble")
+            .build();
+
+    private static final ConcurrentMap<Class<?>, Class<?>> accessorClassMap = Maps.newConcurrentMap();
+
+    public static EntityAccessor getEntityAccessor(TableMeta tableMeta, Class<?> clazz) {
+        List<TableMeta.ColumnMeta> columns = Lists.newArrayList();
+        columns.add(tableMeta.getPrimaryColumn());
+        columns.addAll(tableMeta.getColumns());
+        Class<?> accessorClass = accessorClassMap.computeIfAbsent(clazz, key -> createAccessorClass(columns, key));
+        try {
+            EntityAccessor accessor = (EntityAccessor) accessorClass.newInstance();
+            accessor.init(columns);
+            return accessor;
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Class<?> createAccessorClass(List<TableMeta.ColumnMeta> columns, Class<?> clazz) {
+        if (Modifier.isPrivate(clazz.getModifiers())) {
+            throw new RuntimeException(String.format("entity class must not be private - %s", clazz.getName()));
+        }
+        try {
+            Constructor<?> constructor = clazz.getDeclaredConstructor();
+            if (Modifier.isPrivate(constructor.getModifiers())) {
+                throw new RuntimeException(String.format("entity no-arg constructor must not be private - %s", clazz.getName()));
+            }
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(String.format("entity need no-arg constructor - %s", clazz.getName()));
+        }
+        String entity = getTypeName(clazz);
+        ClassPool pool = new ClassPool(true);
+        pool.appendClassPath(new ClassClassPath(EntityAccessor.class));
+        pool.appendClassPath(new LoaderClassPath(clazz.getClassLoader()));
+        try {
+            CtClass ctClass = pool.makeClass(clazz.getName() + SUFFIX);
+            ctClass.setSuperclass(pool.get(EntityAccessor.class.getName()));
+            ctClass.addConstructor(CtNewConstructor.defaultConstructor(ctClass));
+            ctClass.addMethod(CtNewMethod.make(String.format("public Object newInstance() { return new %s(); }", entity), ctClass));
+
+            StringBuilder getValue = new StringBuilder();
+            getValue.append("public Object getValue(Object o, int i) { ").append(entity).append(" e = (").append(entity).append(") o; switch (i) { ");
+            for (int i = 0; i < columns.size(); i++) {
+                getValue.append("case ").append(i).append(": return ").append(getValueCode(columns.get(i), i, clazz)).append("; ");
+            }
+            getValue.append("default: return null; } }");
+            ctClass.addMethod(CtNewMethod.make(getValue.toString(), ctClass));
+
+            StringBuilder insert = new StringBuilder();
+            insert.append("public Object[] listInsertValue(Object o, Object pk) { ").append(entity).append(" e = (").append(entity).append(") o; ");
+            insert.append("Object[] a = new Object[").append(columns.size()).append("]; a[0] = pk; ");
+            for (int i = 1; i < columns.size(); i++) {
+                insert.append("a[").append(i).append("] = ").append(getValueCode(columns.get(i), i, clazz)).append("; ");
+            }
+            insert.append("return a; }");
+            ctClass.addMethod(CtNewMethod.make(insert.toString(), ctClass));
+
+            List<Integer> updates = Lists.newArrayList();
+            for (int i = 1; i < columns.size(); i++) {
+                if (!columns.get(i).isReadOnly()) {
+                    updates.add(i);
+                }
+            }
+            StringBuilder update = new StringBuilder();
+            update.append("public Object[] listUpdateValue(Object o) { ").append(entity).append(" e = (").append(entity).append(") o; ");
+            update.append("Object[] a = new Object[").append(updates.size() + 1).append("]; ");
+            for (int i = 0; i < updates.size(); i++) {
+                int ordinal = updates.get(i);
+                update.append("a[").append(i).append("] = ").append(getValueCode(columns.get(ordinal), ordinal, clazz)).append("; ");
+            }
+            update.append("a[").append(updates.size()).append("] = ").append(getValueCode(columns.get(0), 0, clazz)).append("; return a; }");
+            ctClass.addMethod(CtNewMethod.make(update.toString(), ctClass));
+
+            StringBuilder populate = new StringBuilder();
+            populate.append("public void populate(Object o, java.sql.ResultSet rs, int[] p) throws java.sql.SQLException { ")
+                    .append(entity).append(" e = (").append(entity).append(") o; ");
+            for (int i = 0; i < columns.size(); i++) {
+                populate.append("if (p[").append(i).append("] > 0) { ").append(getSetCode(columns.get(i), i, clazz)).append(" } ");
+            }
+            populate.append("}");
+            ctClass.addMethod(CtNewMethod.make(populate.toString(), ctClass));
+
+            Class<?> accessorClass = ClassFile.MAJOR_VERSION >= ClassFile.JAVA_9 ?
+                    ctClass.toClass(clazz) : ctClass.toClass(clazz.getClassLoader(), clazz.getProtectionDomain());
+            ctClass.detach();
+            return accessorClass;
+        } catch (Exception e) {
+            throw new RuntimeException(String.format("entity accessor create failure - %s", clazz.getName()), e);
+        }
+    }
+
+    private static String getValueCode(TableMeta.ColumnMeta columnMeta, int ordinal, Class<?> clazz) {
+        Field field = columnMeta.getField();
+        Class<?> type = field.getType();
+        Method getter = getGetter(clazz, field);
+        String value;
+        if (getter == null || (type.isPrimitive() && !primitiveMap.containsKey(type))) {
+            value = String.format("getField(%s, e)", ordinal);
+        } else if (type.isPrimitive()) {
+            value = String.format("%s.valueOf(e.%s())", primitiveMap.get(type)[0], getter.getName());
+        } else {
+            value = String.format("e.%s()", getter.getName());
+        }
+        return TableSupport.isJavaBean(columnMeta) ? String.format("toColumn(%s, %s)", value, ordinal) : value;
+    }
+
+    private static String getSetCode(TableMeta.ColumnMeta columnMeta, int ordinal, Class<?> clazz) {
+        Field field = columnMeta.getField();
+        Class<?> type = field.getType();
+        Method setter = getSetter(clazz, field);
+        String position = String.format("p[%s]", ordinal);
+        String value;
+        boolean boxed = true;
+        if (primitiveMap.containsKey(type)) {
+            value = String.format("rs.%s(%s)", primitiveMap.get(type)[1], position);
+            boxed = false;
+        } else if (wrapperMap.containsKey(type)) {
+            value = String.format("%s(rs, %s)", wrapperMap.get(type), position);
+        } else if (type == String.class) {
+            value = String.format("rs.getString(%s)", position);
+        } else if (type == Date.class) {
+            value = String.format("rs.getTimestamp(%s)", position);
+        } else if (type.isPrimitive()) {
+            return String.format("setField(%s, e, fromColumn(rs, %s, %s));", ordinal, position, ordinal);
+        } else {
+            value = String.format("(%s) fromColumn(rs, %s, %s)", getTypeName(type), position, ordinal);
+        }
+        if (setter != null) {
+            return String.format("e.%s(%s);", setter.getName(), value);
+        }
+        if (!boxed) {
+            value = String.format("%s.valueOf(%s)", primitiveMap.get(type)[0], value);
+        }
+        return String.format("setField(%s, e, %s);", ordinal, value);
+    }
+
+    private static Method getGetter(Class<?> clazz, Field field) {
+        String name = capitalize(field.getName());
+        Method method = getMethod(clazz, "get" + name);
+        if (method == null && (field.getType() == boolean.class || field.getType() == Boolean.class)) {
+            method = getMethod(clazz, "is" + name);
+        }
+        return method != null && method.getReturnType() == field.getType() ? method : null;
+    }
+
+    private static Method getSetter(Class<?> clazz, Field field) {
+        return getMethod(clazz, "set" + capitalize(field.getName()), field.getType());
+    }
+
+    private static Method getMethod(Class<?> clazz, String name, Class<?>... parameterTypes) {
+        try {
+            Method method = clazz.getMethod(name, parameterTypes);
+            Class<?> declaringClass = method.getDeclaringClass();
+            boolean accessible = Modifier.isPublic(declaringClass.getModifiers()) || declaringClass.getPackage() == clazz.getPackage();
+            return Modifier.isStatic(method.getModifiers()) || !accessible ? null : method;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static String getTypeName(Class<?> type) {
+        if (type.isArray()) {
+            return getTypeName(type.getComponentType()) + "[]";
+        }
+        return type.getName().replace('$', '.');
+    }
+
+}
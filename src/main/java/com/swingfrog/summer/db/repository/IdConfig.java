@@ -0,0 +1,42 @@
+package com.swingfrog.summer.db.repository;
+
+public class IdConfig {
+
+    private int nodeId = -1;
+    private int segmentSize;
+    private int threadBlock;
+    private String segmentTable;
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(int nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public int getThreadBlock() {
+        return threadBlock;
+    }
+
+    public void setThreadBlock(int threadBlock) {
+        this.threadBlock = threadBlock;
+    }
+
+    public String getSegmentTable() {
+        return segmentTable;
+    }
+
+    public void setSegmentTable(String segmentTable) {
+        this.segmentTable = segmentTable;
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.swingfrog.summer.db.repository;
+
+/**
+ * 自增主键生成器, 仓库可重写RepositoryDao.createIdGenerator使用自定义的实现
+ */
+public interface IdGenerator {
+
+    long next();
+
+    /**
+     * 确保之后生成的id大于value, 异步缓存重放预写日志时调用
+     */
+    default void ensure(long value) {
+
+    }
+
+}
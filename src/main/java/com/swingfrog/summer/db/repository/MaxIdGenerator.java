@@ -0,0 +1,26 @@
+package com.swingfrog.summer.db.repository;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 从启动时的最大主键开始在内存中递增
+ */
+public class MaxIdGenerator implements IdGenerator {
+
+    private final AtomicLong current;
+
+    public MaxIdGenerator(long max) {
+        current = new AtomicLong(max);
+    }
+
+    @Override
+    public long next() {
+        return current.incrementAndGet();
+    }
+
+    @Override
+    public void ensure(long value) {
+        current.accumulateAndGet(value, Math::max);
+    }
+
+}
@@ -2,93 +2,382 @@ package com.swingfrog.summer.db.repository;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.swingfrog.summer.db.BaseDao;
-import org.apache.commons.dbutils.BasicRowProcessor;
+import com.swingfrog.summer.db.DataBaseMgr;
+import com.swingfrog.summer.db.repository.annotation.IdStrategy;
+import com.swingfrog.summer.redis.RedisMgr;
+import com.swingfrog.summer.redis.RedisUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.apache.commons.dbutils.RowProcessor;
 import org.apache.commons.dbutils.handlers.BeanHandler;
 import org.apache.commons.dbutils.handlers.BeanListHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public abstract class RepositoryDao<T, K> extends BaseDao<T> {
 
+    private static final Logger log = LoggerFactory.getLogger(RepositoryDao.class);
+    private static final int MAX_PLACEHOLDER = 65535;
+    private static final long DEFAULT_DIRTY_TRACKING_EXPIRE_TIME = TimeUnit.MINUTES.toMillis(30);
+
     private BeanHandler<T> beanHandler;
     private BeanListHandler<T> beanListHandler;
+    private RowProcessor rowProcessor;
 
-    private String insertSql;
-    private String deleteSql;
-    private String updateSql;
-    private String selectSql;
-    private String selectAllSql;
-    private AtomicLong primaryKey;
+    private List<TableShard> shards;
+    private final ThreadLocal<TableShard> currentShard = new ThreadLocal<>();
+    private DirtyTracker dirtyTracker;
+    private IdGenerator idGenerator;
     protected TableMeta tableMeta;
 
     protected RepositoryDao() {
         super();
-        beanHandler = new BeanHandler<>(getEntityClass(), new BasicRowProcessor(new RepositoryBeanProcessor()));
-        beanListHandler = new BeanListHandler<>(getEntityClass(), new BasicRowProcessor(new RepositoryBeanProcessor()));
     }
 
     void init() {
         TableMeta tableMeta = TableMetaBuilder.getTableMeta(getEntityClass());
+        rowProcessor = new RepositoryRowProcessor(tableMeta.getAccessor());
+        beanHandler = new BeanHandler<>(getEntityClass(), rowProcessor);
+        beanListHandler = new BeanListHandler<>(getEntityClass(), rowProcessor);
+        List<TableShard> shards = Lists.newArrayListWithCapacity(tableMeta.getShardCount());
+        if (tableMeta.isSharded()) {
+            for (int i = 0; i < tableMeta.getShardCount(); i++) {
+                shards.add(new TableShard(i, shardTopic(i), TableMetaBuilder.getShardTableMeta(tableMeta, i)));
+            }
+        } else {
+            shards.add(new TableShard(0, null, tableMeta));
+        }
+        this.shards = shards;
+        shards.forEach(shard -> onShard(shard, () -> createOrAlterTable(shard.getTableMeta())));
+        if (tableMeta.getPrimaryColumn().isAuto()) {
+            idGenerator = createIdGenerator(tableMeta);
+        }
+        this.tableMeta = tableMeta;
+        if (dirtyTracking()) {
+            dirtyTracker = new DirtyTracker(tableMeta, dirtyTrackingExpireTime());
+        }
+    }
+
+    /**
+     * 按主键的生成方式创建自增主键生成器, 初始化时调用, 可重写使用自定义的实现
+     */
+    protected IdGenerator createIdGenerator(TableMeta tableMeta) {
+        IdConfig idConfig = RepositoryMgr.get().getIdConfig();
+        IdStrategy strategy = tableMeta.getPrimaryColumn().getIdStrategy();
+        switch (strategy) {
+            case SNOWFLAKE:
+                Class<?> type = tableMeta.getPrimaryColumn().getField().getType();
+                if (type != long.class && type != Long.class) {
+                    throw new IllegalArgumentException(String.format("table[%s] snowflake primary key must be long", tableMeta.getName()));
+                }
+                if (idConfig.getNodeId() < 0) {
+                    throw new IllegalStateException(String.format("table[%s] snowflake primary key need config id.nodeId", tableMeta.getName()));
+                }
+                return new SnowflakeIdGenerator(idConfig.getNodeId());
+            case SEGMENT_DB:
+                String segmentTable = idConfig.getSegmentTable();
+                String name = tableMeta.getName();
+                update(SqlBuilder.getCreateIdSegment(segmentTable));
+                update(SqlBuilder.getInsertIdSegment(segmentTable), name, getMaxPrimaryKey());
+                return new SegmentIdGenerator(step -> allocateIdSegment(segmentTable, name, step),
+                        RepositoryMgr.get().getIdAllocateExecutor(), idConfig.getSegmentSize(), idConfig.getThreadBlock());
+            case SEGMENT_REDIS:
+                String key = "id:segment:" + tableMeta.getName();
+                RedisUtil.setnx(key, String.valueOf(getMaxPrimaryKey()));
+                return new SegmentIdGenerator(step -> {
+                    try {
+                        return RedisMgr.get().getConnection().incrBy(key, step);
+                    } finally {
+                        RedisMgr.get().discardConnectionFromRedis();
+                    }
+                }, RepositoryMgr.get().getIdAllocateExecutor(), idConfig.getSegmentSize(), idConfig.getThreadBlock());
+            default:
+                return new MaxIdGenerator(getMaxPrimaryKey());
+        }
+    }
+
+    /**
+     * 各分表中的最大主键, 表为空时使用autoIncrement()
+     */
+    private long getMaxPrimaryKey() {
+        Long maxPk = null;
+        for (TableShard shard : shards) {
+            Object value = onShard(shard, () -> getValue(SqlBuilder.getMaxPrimaryKey(shard.getTableMeta())));
+            if (value != null) {
+                long pk = Long.parseLong(value.toString());
+                maxPk = maxPk == null ? pk : Math.max(maxPk, pk);
+            }
+        }
+        return maxPk == null ? autoIncrement() : maxPk;
+    }
+
+    private long allocateIdSegment(String segmentTable, String name, long step) {
+        long[] max = {0};
+        boolean ok = transaction(() -> {
+            if (update(SqlBuilder.getIncreaseIdSegment(segmentTable), step, name) != 1) {
+                throw new IllegalStateException(String.format("id segment[%s] increase failure", name));
+            }
+            Object value = getValue(SqlBuilder.getIdSegment(segmentTable), name);
+            max[0] = Long.parseLong(value.toString());
+        });
+        if (!ok) {
+            throw new IllegalStateException(String.format("id segment[%s] allocate failure", name));
+        }
+        return max[0];
+    }
+
+    private boolean createOrAlterTable(TableMeta tableMeta) {
         String tableName = getValue(SqlBuilder.getTableExists(tableMeta.getName()));
         if (tableName == null) {
             update(SqlBuilder.getCreateTable(tableMeta));
+            return true;
+        }
+        List<String> columns = listValue(SqlBuilder.getTableColumn(tableMeta.getName()));
+        tableMeta.getColumns().stream()
+                .filter(columnMeta -> !columns.contains(columnMeta.getName()))
+                .forEach(columnMeta -> {
+                    update(SqlBuilder.getAddColumn(tableMeta, columnMeta));
+                    if (tableMeta.getIndexKeys().contains(columnMeta)) {
+                        update(SqlBuilder.getAddColumnIndex(tableMeta, columnMeta));
+                    }
+                });
+        tableMeta.getColumns().stream()
+                .filter(columnMeta -> columns.contains(columnMeta.getName()))
+                .forEach(columnMeta -> checkColumnFormat(tableMeta, columnMeta));
+        return false;
+    }
+
+    /**
+     * 已有的列改为二进制格式时将文本列修改为二进制列, 原有的json文本仍可读取; 二进制列不能改回json文本格式
+     */
+    private void checkColumnFormat(TableMeta tableMeta, TableMeta.ColumnMeta columnMeta) {
+        String dataType = getValue(SqlBuilder.getColumnDataType(), tableMeta.getName(), columnMeta.getName());
+        if (dataType == null) {
+            return;
+        }
+        boolean binaryColumn = isBinaryType(dataType);
+        if (columnMeta.isBinary() && !binaryColumn) {
+            log.info("repository table[{}] column[{}] {} -> {}", tableMeta.getName(), columnMeta.getName(), dataType, columnMeta.getType());
+            update(SqlBuilder.getModifyColumn(tableMeta, columnMeta));
+        } else if (!columnMeta.isBinary() && binaryColumn && !isBinaryType(columnMeta.getType())) {
+            throw new IllegalStateException(String.format("repository table[%s] column[%s] is %s, binary column can not change to format %s",
+                    tableMeta.getName(), columnMeta.getName(), dataType, columnMeta.getFormat()));
+        }
+    }
+
+    private static boolean isBinaryType(String type) {
+        String lower = type.toLowerCase();
+        return lower.contains("blob") || lower.contains("binary");
+    }
+
+    /**
+     * 初始化时的建表检查和最大主键查询使用主库
+     */
+    @Override
+    protected boolean readFromReplica() {
+        return tableMeta != null;
+    }
+
+    /**
+     * 分表使用的数据源, 默认都使用topic(), 重写后可将分表分布到多个数据源
+     */
+    protected String shardTopic(int shard) {
+        return topic();
+    }
+
+    @Override
+    protected String currentTopic() {
+        if (shards == null || shards.size() == 1) {
+            return topic();
+        }
+        TableShard shard = currentShard.get();
+        return shard == null ? topic() : shard.getTopic();
+    }
+
+    /**
+     * 异步操作使用的数据源, 不能确定分表时使用topic()
+     */
+    private String asyncTopic(TableShard shard) {
+        return shard == null ? topic() : shard.getTopic();
+    }
+
+    protected boolean isSharded() {
+        return shards.size() > 1;
+    }
+
+    private TableShard getShard(Object shardValue) {
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+        Objects.requireNonNull(shardValue, "repository shard key value not null");
+        long hash;
+        if (shardValue instanceof Number) {
+            hash = ((Number) shardValue).longValue();
+        } else if (tableMeta.getShardColumn().isIntNumber()) {
+            hash = Long.parseLong(shardValue.toString());
         } else {
-            List<String> columns = listValue(SqlBuilder.getTableColumn(tableMeta.getName()));
-            tableMeta.getColumns().stream()
-                    .filter(columnMeta -> !columns.contains(columnMeta.getName()))
-                    .forEach(columnMeta -> {
-                        update(SqlBuilder.getAddColumn(tableMeta, columnMeta));
-                        if (tableMeta.getIndexKeys().contains(columnMeta)) {
-                            update(SqlBuilder.getAddColumnIndex(tableMeta, columnMeta));
-                        }
-                    });
+            hash = shardValue.toString().hashCode();
         }
-        if (tableMeta.getPrimaryColumn().isAuto()) {
-            Object maxPk = getValue(SqlBuilder.getMaxPrimaryKey(tableMeta));
-            if (maxPk == null) {
-                primaryKey = new AtomicLong(autoIncrement());
+        return shards.get((int) Math.floorMod(hash, (long) shards.size()));
+    }
+
+    private TableShard getShardByEntity(T obj) {
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+        return getShard(TableValueBuilder.getColumnValue(tableMeta.getShardColumn(), obj));
+    }
+
+    /**
+     * 主键所在的分表, 分表键不是主键时无法确定, 返回null
+     */
+    private TableShard getShardByPrimaryKey(Object primaryKey) {
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+        return tableMeta.getShardColumn() == tableMeta.getPrimaryColumn() ? getShard(primaryKey) : null;
+    }
+
+    private TableShard getShardByOptional(Map<String, Object> optional) {
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+        Object value = optional.get(tableMeta.getShardColumn().getName());
+        return value == null ? null : getShard(value);
+    }
+
+    private TableShard getShardByQuery(RepositoryQuery query) {
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+        Object value = query.getEqValue(tableMeta.getShardColumn().getName());
+        return value == null ? null : getShard(value);
+    }
+
+    private <E> Map<TableShard, List<E>> groupByShard(List<E> list, Function<E, TableShard> function) {
+        if (shards.size() == 1) {
+            return ImmutableMap.of(shards.get(0), list);
+        }
+        Map<TableShard, List<E>> map = Maps.newLinkedHashMap();
+        list.forEach(e -> map.computeIfAbsent(function.apply(e), key -> Lists.newArrayList()).add(e));
+        return map;
+    }
+
+    private <R> R onShard(TableShard shard, Supplier<R> supplier) {
+        if (shards.size() == 1) {
+            return supplier.get();
+        }
+        TableShard old = currentShard.get();
+        currentShard.set(shard);
+        try {
+            return supplier.get();
+        } finally {
+            if (old == null) {
+                currentShard.remove();
             } else {
-                primaryKey = new AtomicLong(Long.valueOf(maxPk.toString()));
+                currentShard.set(old);
             }
         }
-        insertSql = SqlBuilder.getInsert(tableMeta);
-        deleteSql = SqlBuilder.getDelete(tableMeta);
-        updateSql = SqlBuilder.getUpdate(tableMeta);
-        selectSql = SqlBuilder.getSelect(tableMeta);
-        selectAllSql = SqlBuilder.getSelectAll(tableMeta);
-        this.tableMeta = tableMeta;
+    }
+
+    /**
+     * 在每张分表上执行, 结果按分表顺序, 当前线程处于事务或工作单元中时依次执行, 否则并行执行
+     */
+    private <R> List<R> onAllShard(Function<TableShard, R> function) {
+        List<R> list = Lists.newArrayListWithCapacity(shards.size());
+        DataBaseMgr dataBaseMgr = DataBaseMgr.get();
+        if (shards.size() == 1 || dataBaseMgr.isTransaction() || dataBaseMgr.isUnitOfWork()) {
+            shards.forEach(shard -> list.add(onShard(shard, () -> function.apply(shard))));
+            return list;
+        }
+        ExecutorService executor = RepositoryMgr.get().getShardExecutor();
+        List<Future<R>> futures = shards.stream()
+                .map(shard -> executor.submit(() -> onShard(shard, () -> function.apply(shard))))
+                .collect(Collectors.toList());
+        try {
+            for (Future<R> future : futures) {
+                list.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(String.format("repository table[%s] shard query interrupted", tableMeta.getName()), e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(String.format("repository table[%s] shard query failure", tableMeta.getName()), e.getCause());
+        }
+        return list;
+    }
+
+    private static <E> List<E> merge(List<List<E>> parts) {
+        List<E> list = Lists.newArrayList();
+        for (List<E> part : parts) {
+            if (part == null) {
+                return null;
+            }
+            list.addAll(part);
+        }
+        return list;
     }
 
     protected boolean isAutoIncrement() {
-        return primaryKey != null;
+        return idGenerator != null;
     }
 
     protected long autoIncrement() {
         return 0;
     }
 
+    void ensurePrimaryKey(long value) {
+        if (idGenerator != null) {
+            idGenerator.ensure(value);
+        }
+    }
+
     private long nextPrimaryKey() {
         if (!isAutoIncrement()) {
             throw new UnsupportedOperationException("primary key must be auto increment");
         }
-        return primaryKey.incrementAndGet();
+        return idGenerator.next();
     }
 
     protected boolean addNotAutoIncrement(T obj) {
         Objects.requireNonNull(obj, "repository add param not null");
-        return update(insertSql, TableValueBuilder.listInsertValue(tableMeta, obj)) > 0;
+        TableShard shard = getShardByEntity(obj);
+        boolean ok = onShard(shard, () -> update(shard.getInsertSql(), TableValueBuilder.listInsertValue(tableMeta, obj))) > 0;
+        if (ok && dirtyTracker != null) {
+            dirtyTracker.refresh(TableValueBuilder.getPrimaryKeyValue(tableMeta, obj), obj);
+        }
+        return ok;
     }
 
     protected boolean addByPrimaryKey(T obj, K primaryKey) {
         Objects.requireNonNull(obj, "repository add param not null");
         Objects.requireNonNull(primaryKey, "repository add param not null");
-        return update(insertSql, TableValueBuilder.listInsertValue(tableMeta, obj, primaryKey)) > 0;
+        TableShard primaryShard = getShardByPrimaryKey(primaryKey);
+        TableShard shard = primaryShard != null ? primaryShard : getShardByEntity(obj);
+        boolean ok = onShard(shard, () -> update(shard.getInsertSql(), TableValueBuilder.listInsertValue(tableMeta, obj, primaryKey))) > 0;
+        if (ok && dirtyTracker != null) {
+            dirtyTracker.refresh(primaryKey, obj);
+        }
+        return ok;
     }
 
     protected void autoIncrementPrimaryKey(T obj) {
@@ -106,89 +395,438 @@ public abstract class RepositoryDao<T, K> extends BaseDao<T> {
 
     public boolean remove(T obj) {
         Objects.requireNonNull(obj, "repository remove param not null");
-        return update(deleteSql, TableValueBuilder.getPrimaryKeyValue(tableMeta, obj)) > 0;
+        Object primaryKey = TableValueBuilder.getPrimaryKeyValue(tableMeta, obj);
+        if (dirtyTracker != null) {
+            dirtyTracker.invalidate(primaryKey);
+        }
+        TableShard shard = getShardByEntity(obj);
+        return onShard(shard, () -> update(shard.getDeleteSql(), primaryKey)) > 0;
     }
 
+    /**
+     * 分表键不是主键时在所有分表上删除
+     */
     public boolean removeByPrimaryKey(K primaryKey) {
         Objects.requireNonNull(primaryKey, "repository remove param not null");
-        return update(deleteSql, primaryKey) > 0;
+        if (dirtyTracker != null) {
+            dirtyTracker.invalidate(primaryKey);
+        }
+        TableShard shard = getShardByPrimaryKey(primaryKey);
+        if (shard != null) {
+            return onShard(shard, () -> update(shard.getDeleteSql(), primaryKey)) > 0;
+        }
+        return onAllShard(s -> update(s.getDeleteSql(), primaryKey)).stream().mapToInt(Integer::intValue).sum() > 0;
     }
 
     public boolean save(T obj) {
         Objects.requireNonNull(obj, "repository save param not null");
-        return update(updateSql, TableValueBuilder.listUpdateValue(tableMeta, obj)) > 0;
+        return saveRow(obj);
+    }
+
+    private boolean saveRow(T obj) {
+        TableShard shard = getShardByEntity(obj);
+        if (dirtyTracker == null) {
+            return onShard(shard, () -> update(shard.getUpdateSql(), TableValueBuilder.listUpdateValue(tableMeta, obj))) > 0;
+        }
+        Object primaryKey = TableValueBuilder.getPrimaryKeyValue(tableMeta, obj);
+        Object[] values = dirtyTracker.listColumnValue(obj);
+        Object[] snapshot = dirtyTracker.snapshot(values);
+        BitSet dirty = dirtyTracker.listDirty(primaryKey, snapshot);
+        if (dirty.isEmpty()) {
+            return true;
+        }
+        boolean ok = onShard(shard, () -> update(shard.getDirtyUpdateSql(dirty, dirtyTracker), dirtyTracker.listUpdateValue(dirty, values, primaryKey))) > 0;
+        if (ok) {
+            dirtyTracker.refresh(primaryKey, snapshot);
+        } else {
+            dirtyTracker.invalidate(primaryKey);
+        }
+        return ok;
     }
 
     public void save(List<T> objs) {
         Objects.requireNonNull(objs, "repository save param not null");
-        objs.forEach(obj -> update(updateSql, TableValueBuilder.listUpdateValue(tableMeta, obj)));
+        if (objs.isEmpty()) {
+            return;
+        }
+        if (!transaction(() -> batchSave(objs))) {
+            log.warn("repository table[{}] batch save failure, save one by one", tableMeta.getName());
+            objs.forEach(this::saveRow);
+        }
+    }
+
+    /**
+     * 开启后按列快照判断修改, 保存时只更新改变的列, 没有改变的行不写入
+     */
+    protected boolean dirtyTracking() {
+        return false;
+    }
+
+    protected long dirtyTrackingExpireTime() {
+        return DEFAULT_DIRTY_TRACKING_EXPIRE_TIME;
+    }
+
+    @Override
+    protected boolean transaction(Runnable runnable) {
+        if (dirtyTracker == null) {
+            return super.transaction(runnable);
+        }
+        boolean begin = dirtyTracker.begin();
+        boolean ok = false;
+        try {
+            ok = super.transaction(runnable);
+        } finally {
+            if (begin) {
+                dirtyTracker.end(ok);
+            }
+        }
+        return ok;
     }
 
+    protected int batchSize() {
+        return AsyncCacheRepositoryMgr.get().getConfig().getBatchSize();
+    }
+
+    protected void batchAdd(List<T> objs) {
+        groupByShard(objs, this::getShardByEntity).forEach((shard, part) -> onShard(shard, () ->
+                batch(shard.getInsertSql(), part.stream().map(obj -> TableValueBuilder.listInsertValue(tableMeta, obj)).collect(Collectors.toList()))));
+        refreshDirtyTracking(objs);
+    }
+
+    /**
+     * 分表键不是主键时在所有分表上删除
+     */
+    protected void batchRemoveByPrimaryKey(List<K> primaryKeys) {
+        if (primaryKeys.isEmpty()) {
+            return;
+        }
+        if (dirtyTracker != null) {
+            primaryKeys.forEach(dirtyTracker::invalidate);
+        }
+        if (shards.size() > 1 && getShardByPrimaryKey(primaryKeys.get(0)) == null) {
+            List<Object[]> args = primaryKeys.stream().map(primaryKey -> new Object[]{primaryKey}).collect(Collectors.toList());
+            shards.forEach(shard -> onShard(shard, () -> batch(shard.getDeleteSql(), args)));
+            return;
+        }
+        groupByShard(primaryKeys, this::getShardByPrimaryKey).forEach((shard, part) -> onShard(shard, () ->
+                batch(shard.getDeleteSql(), part.stream().map(primaryKey -> new Object[]{primaryKey}).collect(Collectors.toList()))));
+    }
+
+    protected void batchSave(List<T> objs) {
+        groupByShard(objs, this::getShardByEntity).forEach((shard, part) -> onShard(shard, () -> batchSave(shard, part)));
+    }
+
+    private boolean batchSave(TableShard shard, List<T> objs) {
+        if (dirtyTracker == null) {
+            return batch(shard.getUpdateSql(), objs.stream().map(obj -> TableValueBuilder.listUpdateValue(tableMeta, obj)).collect(Collectors.toList()));
+        }
+        Map<BitSet, List<Object[]>> dirtyMap = Maps.newLinkedHashMap();
+        objs.forEach(obj -> {
+            Object primaryKey = TableValueBuilder.getPrimaryKeyValue(tableMeta, obj);
+            Object[] values = dirtyTracker.listColumnValue(obj);
+            Object[] snapshot = dirtyTracker.snapshot(values);
+            BitSet dirty = dirtyTracker.listDirty(primaryKey, snapshot);
+            if (!dirty.isEmpty()) {
+                dirtyMap.computeIfAbsent(dirty, key -> Lists.newArrayList()).add(dirtyTracker.listUpdateValue(dirty, values, primaryKey));
+                dirtyTracker.refresh(primaryKey, snapshot);
+            }
+        });
+        dirtyMap.forEach((dirty, args) -> batch(shard.getDirtyUpdateSql(dirty, dirtyTracker), args));
+        return true;
+    }
+
+    protected boolean isDirty(T obj) {
+        if (dirtyTracker == null) {
+            return true;
+        }
+        Object primaryKey = TableValueBuilder.getPrimaryKeyValue(tableMeta, obj);
+        return !dirtyTracker.listDirty(primaryKey, dirtyTracker.snapshot(dirtyTracker.listColumnValue(obj))).isEmpty();
+    }
+
+    private void refreshDirtyTracking(List<T> objs) {
+        if (dirtyTracker != null) {
+            objs.forEach(obj -> dirtyTracker.refresh(TableValueBuilder.getPrimaryKeyValue(tableMeta, obj), obj));
+        }
+    }
+
+    /**
+     * 多行INSERT ... ON DUPLICATE KEY UPDATE, 不存在的行插入, 已存在的行更新非只读列
+     */
+    protected void batchUpsert(List<T> objs) {
+        groupByShard(objs, this::getShardByEntity).forEach((shard, part) -> onShard(shard, () -> batchUpsert(shard, part)));
+        refreshDirtyTracking(objs);
+    }
+
+    private boolean batchUpsert(TableShard shard, List<T> objs) {
+        int columnCount = tableMeta.getColumns().size() + 1;
+        int rows = Math.max(1, Math.min(batchSize(), MAX_PLACEHOLDER / columnCount));
+        for (int i = 0; i < objs.size(); i += rows) {
+            List<T> part = objs.subList(i, Math.min(objs.size(), i + rows));
+            Object[] args = new Object[part.size() * columnCount];
+            int index = 0;
+            for (T obj : part) {
+                Object[] values = TableValueBuilder.listInsertValue(tableMeta, obj);
+                System.arraycopy(values, 0, args, index, values.length);
+                index += values.length;
+            }
+            if (batch(shard.getUpsertSql(part.size()), new Object[][]{args}) == null) {
+                throw new RuntimeException(String.format("repository table[%s] batch upsert failure", shard.getTableMeta().getName()));
+            }
+        }
+        return true;
+    }
+
+    private boolean batch(String sql, List<Object[]> args) {
+        int batchSize = Math.max(1, batchSize());
+        for (int i = 0; i < args.size(); i += batchSize) {
+            List<Object[]> part = args.subList(i, Math.min(args.size(), i + batchSize));
+            if (batch(sql, part.toArray(new Object[0][])) == null) {
+                throw new RuntimeException(String.format("repository table[%s] batch failure", tableMeta.getName()));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 分表键不是主键时在所有分表上查询
+     */
     public T get(K primaryKey) {
         Objects.requireNonNull(primaryKey, "repository get primary key not null");
-        return get(selectSql, primaryKey);
+        TableShard shard = getShardByPrimaryKey(primaryKey);
+        if (shard != null) {
+            return loadDirtyTracking(onShard(shard, () -> get(shard.getSelectSql(), primaryKey)));
+        }
+        return loadDirtyTracking(onAllShard(s -> get(s.getSelectSql(), primaryKey)).stream()
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null));
+    }
+
+    /**
+     * 按主键批量查询, 每batchSize个主键一条IN查询, 不存在的主键忽略, 结果按主键顺序
+     */
+    public List<T> getAll(Collection<K> primaryKeys) {
+        Objects.requireNonNull(primaryKeys, "repository get all primary keys not null");
+        if (primaryKeys.isEmpty()) {
+            return Lists.newArrayList();
+        }
+        List<K> keys = Lists.newArrayList(Sets.newLinkedHashSet(primaryKeys));
+        Map<Object, T> map = Maps.newHashMapWithExpectedSize(keys.size());
+        Consumer<List<T>> consumer = list -> loadDirtyTracking(list).forEach(obj -> map.put(TableValueBuilder.getPrimaryKeyValue(tableMeta, obj), obj));
+        if (shards.size() > 1 && getShardByPrimaryKey(keys.get(0)) == null) {
+            onAllShard(shard -> listByPrimaryKey(shard, keys)).forEach(consumer);
+        } else {
+            groupByShard(keys, this::getShardByPrimaryKey).forEach((shard, part) -> consumer.accept(onShard(shard, () -> listByPrimaryKey(shard, part))));
+        }
+        return keys.stream().map(map::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    private List<T> listByPrimaryKey(TableShard shard, List<K> keys) {
+        List<T> list = Lists.newArrayList();
+        int batchSize = Math.max(1, Math.min(batchSize(), MAX_PLACEHOLDER));
+        for (int i = 0; i < keys.size(); i += batchSize) {
+            List<K> part = keys.subList(i, Math.min(keys.size(), i + batchSize));
+            List<T> rows = list(shard.getSelectInSql(part.size()), part.toArray());
+            if (rows != null) {
+                list.addAll(rows);
+            }
+        }
+        return list;
     }
 
     public List<T> list(String field, Object value) {
         Objects.requireNonNull(field, "repository list field not null");
         Objects.requireNonNull(value, "repository list value not null");
-        Map<String, Object> optional = ImmutableMap.of(field, value);
-        List<String> fields = TableValueBuilder.listValidFieldByOptional(tableMeta, optional);
-        String sql = SqlBuilder.getSelectField(tableMeta, fields);
-        return list(sql, TableValueBuilder.listValidValueByOptional(tableMeta, optional, fields));
+        return list(ImmutableMap.of(field, value));
     }
 
+    /**
+     * 条件中包含分表键时只查询对应的分表, 否则查询所有分表后合并
+     */
     public List<T> list(Map<String, Object> optional) {
         Objects.requireNonNull(optional, "repository list optional not null");
         List<String> fields = TableValueBuilder.listValidFieldByOptional(tableMeta, optional);
-        String sql = SqlBuilder.getSelectField(tableMeta, fields);
-        return list(sql, TableValueBuilder.listValidValueByOptional(tableMeta, optional, fields));
+        Object[] values = TableValueBuilder.listValidValueByOptional(tableMeta, optional, fields);
+        TableShard shard = getShardByOptional(optional);
+        if (shard != null) {
+            return loadDirtyTracking(onShard(shard, () -> list(SqlBuilder.getSelectField(shard.getTableMeta(), fields), values)));
+        }
+        return loadDirtyTracking(merge(onAllShard(s -> list(SqlBuilder.getSelectField(s.getTableMeta(), fields), values))));
     }
 
     public List<T> list() {
-        return list(selectAllSql);
+        return loadDirtyTracking(merge(onAllShard(shard -> list(shard.getSelectAllSql()))));
     }
 
-    private T get(String sql, Object... args) {
-        return convert(getBean(sql, beanHandler, args));
+    /**
+     * 按条件查询, 支持比较/IN/BETWEEN, 排序, LIMIT/OFFSET和游标分页, 同一形状的查询复用SQL
+     * 分表时有分表键的等值条件只查询对应的分表, 否则每张分表查询前offset+limit行, 合并排序后再分页
+     */
+    public List<T> list(RepositoryQuery query) {
+        Objects.requireNonNull(query, "repository list query not null");
+        query.check(tableMeta);
+        return loadDirtyTracking(listByQuery(query, false));
     }
 
-    private List<T> list(String sql, Object... args) {
-        return convert(listBean(sql, beanListHandler, args));
+    private List<T> listByQuery(RepositoryQuery query, boolean primaryKeyOnly) {
+        TableShard shard = getShardByQuery(query);
+        if (shard != null) {
+            return onShard(shard, () -> list(shard.getQuerySql(query, primaryKeyOnly), query.listValue(tableMeta)));
+        }
+        RepositoryQuery shardQuery = query.toShard();
+        List<T> list = merge(onAllShard(s -> list(s.getQuerySql(shardQuery, primaryKeyOnly), shardQuery.listValue(tableMeta))));
+        if (list == null || query.listOrder(tableMeta).isEmpty()) {
+            return list;
+        }
+        list.sort(query.comparator(tableMeta));
+        return list.stream()
+                .skip(query.getOffset())
+                .limit(query.getLimit() < 0 ? Long.MAX_VALUE : query.getLimit())
+                .collect(Collectors.toList());
     }
 
-    private T convert(T obj) {
-        if (obj == null) {
-            return null;
+    /**
+     * 异步查询, 在数据源的异步线程池中执行, 不阻塞调用线程
+     */
+    public CompletableFuture<T> getAsync(K primaryKey) {
+        Objects.requireNonNull(primaryKey, "repository get primary key not null");
+        return async(asyncTopic(getShardByPrimaryKey(primaryKey)), () -> get(primaryKey));
+    }
+
+    public CompletableFuture<List<T>> getAllAsync(Collection<K> primaryKeys) {
+        Objects.requireNonNull(primaryKeys, "repository get all primary keys not null");
+        return async(() -> getAll(primaryKeys));
+    }
+
+    public CompletableFuture<List<T>> listAsync(String field, Object value) {
+        Objects.requireNonNull(field, "repository list field not null");
+        Objects.requireNonNull(value, "repository list value not null");
+        return async(asyncTopic(getShardByOptional(ImmutableMap.of(field, value))), () -> list(field, value));
+    }
+
+    public CompletableFuture<List<T>> listAsync(Map<String, Object> optional) {
+        Objects.requireNonNull(optional, "repository list optional not null");
+        return async(asyncTopic(getShardByOptional(optional)), () -> list(optional));
+    }
+
+    public CompletableFuture<List<T>> listAsync(RepositoryQuery query) {
+        Objects.requireNonNull(query, "repository list query not null");
+        return async(asyncTopic(getShardByQuery(query)), () -> list(query));
+    }
+
+    public CompletableFuture<Boolean> addAsync(T obj) {
+        Objects.requireNonNull(obj, "repository add param not null");
+        return asyncWrite(asyncTopic(getShardByEntity(obj)), () -> add(obj));
+    }
+
+    public CompletableFuture<Boolean> saveAsync(T obj) {
+        Objects.requireNonNull(obj, "repository save param not null");
+        return asyncWrite(asyncTopic(getShardByEntity(obj)), () -> save(obj));
+    }
+
+    public CompletableFuture<Boolean> removeAsync(T obj) {
+        Objects.requireNonNull(obj, "repository remove param not null");
+        return asyncWrite(asyncTopic(getShardByEntity(obj)), () -> remove(obj));
+    }
+
+    /**
+     * 流式遍历整张表, 逐行处理而不一次性加载到内存, 处理过程中不能在当前线程查询数据库, 返回遍历的行数, 失败返回-1
+     */
+    public long stream(Consumer<T> consumer) {
+        Objects.requireNonNull(consumer, "repository stream consumer not null");
+        long count = 0;
+        for (TableShard shard : shards) {
+            long part = onShard(shard, () -> stream(shard.getSelectAllSql(), consumer));
+            if (part < 0) {
+                return -1;
+            }
+            count += part;
+        }
+        return count;
+    }
+
+    /**
+     * 分表时按分表并行流式遍历, consumer需要线程安全
+     */
+    protected long stream(int parallel, Consumer<T> consumer) {
+        if (parallel <= 1 || shards.size() == 1) {
+            return stream(consumer);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallel, shards.size()), new DefaultThreadFactory("RepositoryShardStream"));
+        try {
+            List<Future<Long>> futures = shards.stream()
+                    .map(shard -> executor.submit(() -> onShard(shard, () -> stream(shard.getSelectAllSql(), consumer))))
+                    .collect(Collectors.toList());
+            long count = 0;
+            for (Future<Long> future : futures) {
+                long part = future.get();
+                if (part < 0) {
+                    return -1;
+                }
+                count += part;
+            }
+            return count;
+        } catch (InterruptedException | ExecutionException e) {
+            log.error(e.getMessage(), e);
+            return -1;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    protected long stream(String sql, Consumer<T> consumer, Object... args) {
+        return streamBean(sql, rowProcessor, obj -> consumer.accept(loadDirtyTracking(obj)), args);
+    }
+
+    private T loadDirtyTracking(T obj) {
+        if (obj != null && dirtyTracker != null) {
+            dirtyTracker.load(TableValueBuilder.getPrimaryKeyValue(tableMeta, obj), obj);
         }
-        tableMeta.getColumns().stream()
-                .filter(columnMeta -> {
-                    try {
-                        Object value = columnMeta.getField().get(obj);
-                        return value instanceof Collection || value instanceof Map;
-                    } catch (IllegalAccessException e) {
-                        return false;
-                    }
-                })
-                .forEach(columnMeta -> TableValueBuilder.jsonConvertJavaBean(columnMeta.getField(), obj));
         return obj;
     }
 
-    private List<T> convert(List<T> objs) {
-        objs.forEach(this::convert);
+    private List<T> loadDirtyTracking(List<T> objs) {
+        if (objs != null && dirtyTracker != null) {
+            objs.forEach(this::loadDirtyTracking);
+        }
         return objs;
     }
 
+    private T get(String sql, Object... args) {
+        return getBean(sql, beanHandler, args);
+    }
+
+    private List<T> list(String sql, Object... args) {
+        return listBean(sql, beanListHandler, args);
+    }
+
     protected List<K> listPrimaryKey(Map<String, Object> optional) {
         List<String> fields = TableValueBuilder.listValidFieldByOptional(tableMeta, optional);
-        String sql = SqlBuilder.getPrimaryColumnSelectField(tableMeta, fields);
-        return list(sql, TableValueBuilder.listValidValueByOptional(tableMeta, optional, fields)).stream()
-                .map(obj -> (K) TableValueBuilder.getPrimaryKeyValue(tableMeta, obj))
-                .collect(Collectors.toList());
+        Object[] values = TableValueBuilder.listValidValueByOptional(tableMeta, optional, fields);
+        TableShard shard = getShardByOptional(optional);
+        List<T> list;
+        if (shard != null) {
+            list = onShard(shard, () -> list(SqlBuilder.getPrimaryColumnSelectField(shard.getTableMeta(), fields), values));
+        } else {
+            list = merge(onAllShard(s -> list(SqlBuilder.getPrimaryColumnSelectField(s.getTableMeta(), fields), values)));
+        }
+        return toPrimaryKey(list);
+    }
+
+    /**
+     * 分表且需要合并排序时查询整行, 否则只查询主键
+     */
+    protected List<K> listPrimaryKey(RepositoryQuery query) {
+        boolean primaryKeyOnly = getShardByQuery(query) != null || query.listOrder(tableMeta).isEmpty();
+        return toPrimaryKey(listByQuery(query, primaryKeyOnly));
     }
 
     protected List<K> listPrimaryKey() {
-        return list(SqlBuilder.getPrimaryColumnSelectField(tableMeta, ImmutableList.of())).stream()
+        return toPrimaryKey(merge(onAllShard(shard -> list(SqlBuilder.getPrimaryColumnSelectField(shard.getTableMeta(), ImmutableList.of())))));
+    }
+
+    private List<K> toPrimaryKey(List<T> list) {
+        return list.stream()
                 .map(obj -> (K) TableValueBuilder.getPrimaryKeyValue(tableMeta, obj))
                 .collect(Collectors.toList());
     }
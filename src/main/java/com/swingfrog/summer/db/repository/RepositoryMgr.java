@@ -1,9 +1,29 @@
 package com.swingfrog.summer.db.repository;
 
+import com.swingfrog.summer.config.ConfigUtil;
 import com.swingfrog.summer.ioc.ContainerMgr;
+import com.swingfrog.summer.util.ThreadCountUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class RepositoryMgr {
 
+    private static final Logger log = LoggerFactory.getLogger(RepositoryMgr.class);
+    private static final int DEFAULT_ID_SEGMENT_SIZE = 1000;
+    private static final int DEFAULT_ID_THREAD_BLOCK = 100;
+    private static final String DEFAULT_ID_SEGMENT_TABLE = "t_id_segment";
+
+    private final IdConfig idConfig = new IdConfig();
+    private volatile ExecutorService shardExecutor;
+    private volatile ExecutorService idAllocateExecutor;
+
     private static class SingleCase {
         public static final RepositoryMgr INSTANCE = new RepositoryMgr();
     }
@@ -16,8 +36,69 @@ public class RepositoryMgr {
         return RepositoryMgr.SingleCase.INSTANCE;
     }
 
+    public void loadConfig(String path) throws IOException {
+        Properties pro = new Properties();
+        FileInputStream in = new FileInputStream(path);
+        pro.load(in);
+        ConfigUtil.loadDataWithBean(pro, "id.", idConfig);
+        in.close();
+        pro.clear();
+        applyIdConfigDefault();
+        log.info("repository manager loading config, id node[{}] segment size[{}] thread block[{}] segment table[{}]",
+                idConfig.getNodeId(), idConfig.getSegmentSize(), idConfig.getThreadBlock(), idConfig.getSegmentTable());
+    }
+
+    /**
+     * 未加载配置时也使用默认值
+     */
+    public IdConfig getIdConfig() {
+        applyIdConfigDefault();
+        return idConfig;
+    }
+
+    private void applyIdConfigDefault() {
+        if (idConfig.getSegmentSize() <= 0) {
+            idConfig.setSegmentSize(DEFAULT_ID_SEGMENT_SIZE);
+        }
+        if (idConfig.getThreadBlock() <= 0) {
+            idConfig.setThreadBlock(DEFAULT_ID_THREAD_BLOCK);
+        }
+        if (idConfig.getSegmentTable() == null || idConfig.getSegmentTable().isEmpty()) {
+            idConfig.setSegmentTable(DEFAULT_ID_SEGMENT_TABLE);
+        }
+    }
+
     public void init() {
         ContainerMgr.get().listDeclaredComponent(RepositoryDao.class).forEach(RepositoryDao::init);
+        ContainerMgr.get().listDeclaredComponent(CacheRepositoryDao.class).forEach(CacheRepositoryDao::preloadOnInit);
+    }
+
+    /**
+     * 分表查询并行访问各分表的线程池
+     */
+    ExecutorService getShardExecutor() {
+        if (shardExecutor == null) {
+            synchronized (this) {
+                if (shardExecutor == null) {
+                    shardExecutor = Executors.newFixedThreadPool(ThreadCountUtil.convert(0), new DefaultThreadFactory("RepositoryShardQuery", true));
+                }
+            }
+        }
+        return shardExecutor;
+    }
+
+    /**
+     * 号段分配的线程, 分配不在调用方的事务和连接中执行
+     */
+    ExecutorService getIdAllocateExecutor() {
+        if (idAllocateExecutor == null) {
+            synchronized (this) {
+                if (idAllocateExecutor == null) {
+                    idAllocateExecutor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("RepositoryIdAllocate", true));
+                }
+            }
+        }
+        return idAllocateExecutor;
     }
 
 }
@@ -0,0 +1,354 @@
+package com.swingfrog.summer.db.repository;
+
+import com.google.common.collect.Lists;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 仓库查询条件, 支持比较/IN/BETWEEN条件, 排序, LIMIT/OFFSET以及按上一页最后一行的游标分页
+ * 同一形状(条件字段和类型, 排序, 分页方式)的查询共用一条SQL
+ */
+public class RepositoryQuery {
+
+    public enum Operator {
+        EQ("="), NE("<>"), LT("<"), LE("<="), GT(">"), GE(">="), IN("IN"), BETWEEN("BETWEEN");
+
+        private final String sql;
+
+        Operator(String sql) {
+            this.sql = sql;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+    }
+
+    public static class Condition {
+        private final String field;
+        private final Operator operator;
+        private final List<Object> values;
+
+        Condition(String field, Operator operator, List<Object> values) {
+            this.field = field;
+            this.operator = operator;
+            this.values = values;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public Operator getOperator() {
+            return operator;
+        }
+
+        public List<Object> getValues() {
+            return values;
+        }
+
+        boolean match(TableMeta.ColumnMeta columnMeta, Object obj) {
+            Object value = TableValueBuilder.getColumnValue(columnMeta, obj);
+            if (value == null) {
+                return false;
+            }
+            switch (operator) {
+                case EQ: return compare(value, TableValueBuilder.convert(values.get(0), columnMeta)) == 0;
+                case NE: return compare(value, TableValueBuilder.convert(values.get(0), columnMeta)) != 0;
+                case LT: return compare(value, values.get(0)) < 0;
+                case LE: return compare(value, values.get(0)) <= 0;
+                case GT: return compare(value, values.get(0)) > 0;
+                case GE: return compare(value, values.get(0)) >= 0;
+                case IN: return values.stream().anyMatch(v -> compare(value, TableValueBuilder.convert(v, columnMeta)) == 0);
+                case BETWEEN: return compare(value, values.get(0)) >= 0 && compare(value, values.get(1)) <= 0;
+                default: return false;
+            }
+        }
+    }
+
+    public static class Order {
+        private final String field;
+        private final boolean desc;
+
+        Order(String field, boolean desc) {
+            this.field = field;
+            this.desc = desc;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public boolean isDesc() {
+            return desc;
+        }
+    }
+
+    private final List<Condition> conditions = Lists.newArrayList();
+    private final List<Order> orders = Lists.newArrayList();
+    private int limit = -1;
+    private int offset;
+    private Object after;
+
+    public static RepositoryQuery create() {
+        return new RepositoryQuery();
+    }
+
+    public RepositoryQuery eq(String field, Object value) {
+        return condition(field, Operator.EQ, value);
+    }
+
+    public RepositoryQuery ne(String field, Object value) {
+        return condition(field, Operator.NE, value);
+    }
+
+    public RepositoryQuery lt(String field, Object value) {
+        return condition(field, Operator.LT, value);
+    }
+
+    public RepositoryQuery le(String field, Object value) {
+        return condition(field, Operator.LE, value);
+    }
+
+    public RepositoryQuery gt(String field, Object value) {
+        return condition(field, Operator.GT, value);
+    }
+
+    public RepositoryQuery ge(String field, Object value) {
+        return condition(field, Operator.GE, value);
+    }
+
+    public RepositoryQuery in(String field, Collection<?> values) {
+        Objects.requireNonNull(values, "repository query in values not null");
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException(String.format("repository query field[%s] in values not empty", field));
+        }
+        return condition(field, Operator.IN, values.toArray());
+    }
+
+    public RepositoryQuery between(String field, Object from, Object to) {
+        return condition(field, Operator.BETWEEN, from, to);
+    }
+
+    private RepositoryQuery condition(String field, Operator operator, Object... values) {
+        Objects.requireNonNull(field, "repository query field not null");
+        for (Object value : values) {
+            Objects.requireNonNull(value, "repository query value not null");
+        }
+        conditions.add(new Condition(field, operator, Lists.newArrayList(values)));
+        return this;
+    }
+
+    public RepositoryQuery orderBy(String field) {
+        orders.add(new Order(Objects.requireNonNull(field, "repository query order field not null"), false));
+        return this;
+    }
+
+    public RepositoryQuery orderByDesc(String field) {
+        orders.add(new Order(Objects.requireNonNull(field, "repository query order field not null"), true));
+        return this;
+    }
+
+    public RepositoryQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    public RepositoryQuery offset(int offset) {
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * 游标分页, 只返回排序在上一页最后一个实体之后的行, 比OFFSET翻页更快
+     */
+    public RepositoryQuery after(Object last) {
+        this.after = Objects.requireNonNull(last, "repository query after not null");
+        return this;
+    }
+
+    public List<Condition> getConditions() {
+        return Collections.unmodifiableList(conditions);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public Object getAfter() {
+        return after;
+    }
+
+    /**
+     * 分表查询时每张表执行的查询, 偏移量合并到LIMIT中, 合并后再按原查询分页
+     */
+    RepositoryQuery toShard() {
+        RepositoryQuery query = new RepositoryQuery();
+        query.conditions.addAll(conditions);
+        query.orders.addAll(orders);
+        query.limit = limit >= 0 ? limit + offset : -1;
+        query.after = after;
+        return query;
+    }
+
+    /**
+     * 字段的等值条件, 用于按分表键路由, 没有时返回null
+     */
+    Object getEqValue(String field) {
+        for (Condition condition : conditions) {
+            if (condition.operator == Operator.EQ && condition.field.equals(field)) {
+                return condition.values.get(0);
+            }
+        }
+        return null;
+    }
+
+    boolean isPaging() {
+        return limit >= 0 || offset > 0 || after != null;
+    }
+
+    /**
+     * 实际使用的排序, 分页或排序时追加主键保证顺序稳定
+     */
+    List<Order> listOrder(TableMeta tableMeta) {
+        String primaryKey = tableMeta.getPrimaryColumn().getName();
+        if ((orders.isEmpty() && !isPaging()) || orders.stream().anyMatch(order -> order.field.equals(primaryKey))) {
+            return orders;
+        }
+        List<Order> list = Lists.newArrayList(orders);
+        list.add(new Order(primaryKey, !orders.isEmpty() && orders.get(orders.size() - 1).desc));
+        return list;
+    }
+
+    void check(TableMeta tableMeta) {
+        conditions.forEach(condition -> checkField(tableMeta, condition.field));
+        orders.forEach(order -> checkField(tableMeta, order.field));
+        if (after != null && !tableMeta.getPrimaryColumn().getField().getDeclaringClass().isInstance(after)) {
+            throw new IllegalArgumentException(String.format("repository query after must be entity of table[%s]", tableMeta.getName()));
+        }
+    }
+
+    private static void checkField(TableMeta tableMeta, String field) {
+        if (!tableMeta.getColumnMetaMap().containsKey(field)) {
+            throw new IllegalArgumentException(String.format("repository query field[%s] not found in table[%s]", field, tableMeta.getName()));
+        }
+    }
+
+    /**
+     * 查询的形状, 作为SQL缓存的键
+     */
+    String getShape(boolean primaryKeyOnly) {
+        StringBuilder builder = new StringBuilder(primaryKeyOnly ? "K" : "A");
+        conditions.forEach(condition -> {
+            builder.append('|').append(condition.field).append(':').append(condition.operator);
+            if (condition.operator == Operator.IN) {
+                builder.append(':').append(condition.values.size());
+            }
+        });
+        builder.append("|O");
+        orders.forEach(order -> builder.append(':').append(order.field).append(order.desc ? "-" : "+"));
+        builder.append('|').append(limit >= 0 ? 'L' : '_').append(offset > 0 ? 'F' : '_').append(after != null ? 'A' : '_');
+        return builder.toString();
+    }
+
+    Object[] listValue(TableMeta tableMeta) {
+        List<Object> list = Lists.newArrayList();
+        conditions.forEach(condition -> {
+            TableMeta.ColumnMeta columnMeta = tableMeta.getColumnMetaMap().get(condition.field);
+            condition.values.forEach(value -> list.add(TableValueBuilder.convert(value, columnMeta)));
+        });
+        if (after != null) {
+            List<Order> orders = listOrder(tableMeta);
+            for (int i = 0; i < orders.size(); i++) {
+                Object value = TableValueBuilder.getColumnValue(tableMeta.getColumnMetaMap().get(orders.get(i).field), after);
+                list.add(value);
+                if (i < orders.size() - 1) {
+                    list.add(value);
+                }
+            }
+        }
+        if (limit >= 0) {
+            list.add(limit);
+        }
+        if (offset > 0) {
+            list.add(offset);
+        }
+        return list.toArray();
+    }
+
+    boolean match(TableMeta tableMeta, Object obj) {
+        for (Condition condition : conditions) {
+            if (!condition.match(tableMeta.getColumnMetaMap().get(condition.field), obj)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    <T> Comparator<T> comparator(TableMeta tableMeta) {
+        List<Order> orders = listOrder(tableMeta);
+        return (a, b) -> {
+            for (Order order : orders) {
+                TableMeta.ColumnMeta columnMeta = tableMeta.getColumnMetaMap().get(order.field);
+                int result = compare(TableValueBuilder.getColumnValue(columnMeta, a), TableValueBuilder.getColumnValue(columnMeta, b));
+                if (result != 0) {
+                    return order.desc ? -result : result;
+                }
+            }
+            return 0;
+        };
+    }
+
+    /**
+     * 在内存中过滤排序时使用的比较, null最小, 整数按long比较, 其他数值按double比较,
+     * 字符串按常用的*_ci排序规则忽略大小写, 但不处理重音和尾部空格, 与数据库的排序规则不完全一致
+     */
+    static int compare(Object a, Object b) {
+        if (a == b) {
+            return 0;
+        }
+        if (a == null) {
+            return -1;
+        }
+        if (b == null) {
+            return 1;
+        }
+        if (a instanceof Number && b instanceof Number) {
+            if (isIntegral(a) && isIntegral(b)) {
+                return Long.compare(((Number) a).longValue(), ((Number) b).longValue());
+            }
+            return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+        }
+        if (a instanceof Date && b instanceof Date) {
+            return ((Date) a).compareTo((Date) b);
+        }
+        if (a instanceof byte[] && b instanceof byte[]) {
+            return Arrays.equals((byte[]) a, (byte[]) b) ? 0 : Integer.compare(((byte[]) a).length, ((byte[]) b).length);
+        }
+        if (a instanceof String && b instanceof String) {
+            return String.CASE_INSENSITIVE_ORDER.compare((String) a, (String) b);
+        }
+        if (a instanceof Boolean && b instanceof Boolean) {
+            return Boolean.compare((Boolean) a, (Boolean) b);
+        }
+        if (a instanceof Comparable && a.getClass() == b.getClass()) {
+            return ((Comparable<Object>) a).compareTo(b);
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    private static boolean isIntegral(Object value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+}
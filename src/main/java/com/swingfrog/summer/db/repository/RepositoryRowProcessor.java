@@ -0,0 +1,40 @@
+package com.swingfrog.summer.db.repository;
+
+import com.google.common.collect.Lists;
+import org.apache.commons.dbutils.BasicRowProcessor;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * 使用生成的EntityAccessor把结果集转换为实体, 代替反射的BeanProcessor, java bean列按字段的泛型类型直接解析
+ */
+public class RepositoryRowProcessor extends BasicRowProcessor {
+
+    private final EntityAccessor accessor;
+
+    public RepositoryRowProcessor(EntityAccessor accessor) {
+        super(new RepositoryBeanProcessor());
+        this.accessor = accessor;
+    }
+
+    @Override
+    public <T> T toBean(ResultSet rs, Class<? extends T> type) throws SQLException {
+        return (T) accessor.toBean(rs, accessor.getPositions(rs));
+    }
+
+    @Override
+    public <T> List<T> toBeanList(ResultSet rs, Class<? extends T> type) throws SQLException {
+        List<T> list = Lists.newArrayList();
+        if (!rs.next()) {
+            return list;
+        }
+        int[] positions = accessor.getPositions(rs);
+        do {
+            list.add((T) accessor.toBean(rs, positions));
+        } while (rs.next());
+        return list;
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.swingfrog.summer.db.repository;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * 号段生成器, 每次从计数器(数据库或redis)取segmentSize个id, allocator返回增加后的计数器值, 号段为(值-segmentSize, 值]
+ * 线程每次从号段中领取threadBlock个id后在本线程内递增, 取id时没有竞争; 号段用掉一半时在allocateExecutor中预取下一个号段
+ * 进程退出时未使用的id作废, id不连续但不会重复
+ */
+public class SegmentIdGenerator implements IdGenerator {
+
+    private final LongUnaryOperator allocator;
+    private final Executor allocateExecutor;
+    private final int segmentSize;
+    private final int threadBlock;
+    private final ThreadLocal<long[]> local = ThreadLocal.withInitial(() -> new long[2]);
+    private long current;
+    private long end;
+    private CompletableFuture<Long> prefetch;
+
+    public SegmentIdGenerator(LongUnaryOperator allocator, Executor allocateExecutor, int segmentSize, int threadBlock) {
+        this.allocator = allocator;
+        this.allocateExecutor = allocateExecutor;
+        this.segmentSize = Math.max(1, segmentSize);
+        this.threadBlock = Math.max(1, Math.min(threadBlock, this.segmentSize));
+    }
+
+    @Override
+    public long next() {
+        long[] block = local.get();
+        if (block[0] >= block[1]) {
+            takeBlock(block);
+        }
+        return block[0]++;
+    }
+
+    private synchronized void takeBlock(long[] block) {
+        if (current >= end) {
+            CompletableFuture<Long> future = prefetch != null ? prefetch : allocate();
+            prefetch = null;
+            long max = future.join();
+            current = max - segmentSize + 1;
+            end = max + 1;
+        }
+        block[0] = current;
+        block[1] = Math.min(end, current + threadBlock);
+        current = block[1];
+        if (prefetch == null && end - current < segmentSize / 2) {
+            prefetch = allocate();
+        }
+    }
+
+    /**
+     * 在独立的线程中分配, 不加入调用方的事务, 调用方回滚不会使已分配的号段重复
+     */
+    private CompletableFuture<Long> allocate() {
+        return CompletableFuture.supplyAsync(() -> allocator.applyAsLong(segmentSize), allocateExecutor);
+    }
+
+}
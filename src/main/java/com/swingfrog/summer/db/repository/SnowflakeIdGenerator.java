@@ -0,0 +1,40 @@
+package com.swingfrog.summer.db.repository;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 41位毫秒时间戳(从2020-01-01起) + 10位节点id + 12位序列, 每个节点每毫秒4096个id, 无锁生成
+ * 同一毫秒的序列用完或时钟回拨时借用之后的时间戳继续递增, 保证单调; 进程重启前后时钟回拨仍可能重复
+ */
+public class SnowflakeIdGenerator implements IdGenerator {
+
+    private static final long EPOCH = 1577836800000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long node;
+    private final AtomicLong last = new AtomicLong();
+
+    public SnowflakeIdGenerator(int node) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException(String.format("snowflake node id must be in [0, %s] - %s", MAX_NODE, node));
+        }
+        this.node = node;
+    }
+
+    @Override
+    public long next() {
+        while (true) {
+            long old = last.get();
+            long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+            long value = now > old ? now : old + 1;
+            if (last.compareAndSet(old, value)) {
+                long timestamp = value >>> SEQUENCE_BITS;
+                return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | (value & SEQUENCE_MASK);
+            }
+        }
+    }
+
+}
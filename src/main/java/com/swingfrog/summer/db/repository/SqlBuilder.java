@@ -1,7 +1,10 @@
 package com.swingfrog.summer.db.repository;
 
+import com.google.common.collect.Lists;
+
 import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class SqlBuilder {
 
@@ -13,6 +16,10 @@ public class SqlBuilder {
         return String.format("SELECT column_name FROM information_schema.columns WHERE table_name='%s';", tableName);
     }
 
+    public static String getColumnDataType() {
+        return "SELECT data_type FROM information_schema.columns WHERE table_schema=DATABASE() AND table_name=? AND column_name=?;";
+    }
+
     public static String getCreateTable(TableMeta tableMeta) {
         StringBuilder builder = new StringBuilder();
         builder.append("CREATE TABLE IF NOT EXISTS `").append(tableMeta.getName()).append("` (\n");
@@ -65,6 +72,17 @@ public class SqlBuilder {
         return builder.toString();
     }
 
+    public static String getModifyColumn(TableMeta tableMeta, TableMeta.ColumnMeta columnMeta) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("ALTER TABLE `").append(tableMeta.getName()).append("`\n");
+        builder.append(" MODIFY COLUMN").append(getCreateColumn(columnMeta));
+        if (columnMeta.getComment() != null) {
+            builder.append(" COMMENT '").append(columnMeta.getComment()).append("'");
+        }
+        builder.append(";");
+        return builder.toString();
+    }
+
     public static String getAddColumnIndex(TableMeta tableMeta, TableMeta.ColumnMeta columnMeta) {
         StringBuilder builder = new StringBuilder();
         builder.append("ALTER TABLE `").append(tableMeta.getName()).append("`\n");
@@ -80,14 +98,42 @@ public class SqlBuilder {
         tableMeta.getColumns().forEach(columnMeta -> builder.append(",`").append(columnMeta.getName()).append("`"));
         builder.append(") VALUES(?");
         tableMeta.getColumns().forEach(columnMeta -> builder.append(",?"));
-        builder.append(");");
+        builder.append(")");
+        return builder.toString();
+    }
+
+    public static String getUpsert(TableMeta tableMeta, int rows) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("INSERT INTO `").append(tableMeta.getName()).append("` (");
+        builder.append("`").append(tableMeta.getPrimaryColumn().getName()).append("`");
+        tableMeta.getColumns().forEach(columnMeta -> builder.append(",`").append(columnMeta.getName()).append("`"));
+        builder.append(") VALUES");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                builder.append(",");
+            }
+            builder.append("(?");
+            tableMeta.getColumns().forEach(columnMeta -> builder.append(",?"));
+            builder.append(")");
+        }
+        builder.append(" ON DUPLICATE KEY UPDATE ");
+        List<String> updates = tableMeta.getColumns().stream()
+                .filter(columnMeta -> !columnMeta.isReadOnly())
+                .map(columnMeta -> String.format("`%s` = VALUES(`%s`)", columnMeta.getName(), columnMeta.getName()))
+                .collect(Collectors.toList());
+        if (updates.isEmpty()) {
+            String primaryName = tableMeta.getPrimaryColumn().getName();
+            builder.append(String.format("`%s` = `%s`", primaryName, primaryName));
+        } else {
+            builder.append(String.join(", ", updates));
+        }
         return builder.toString();
     }
 
     public static String getDelete(TableMeta tableMeta) {
         StringBuilder builder = new StringBuilder();
         builder.append("DELETE FROM `").append(tableMeta.getName()).append("` WHERE `")
-                .append(tableMeta.getPrimaryColumn().getName()).append("` = ?;");
+                .append(tableMeta.getPrimaryColumn().getName()).append("` = ?");
         return builder.toString();
     }
 
@@ -115,7 +161,17 @@ public class SqlBuilder {
                 }
             }
         }
-        builder.append(" WHERE `").append(tableMeta.getPrimaryColumn().getName()).append("` = ?;");
+        builder.append(" WHERE `").append(tableMeta.getPrimaryColumn().getName()).append("` = ?");
+        return builder.toString();
+    }
+
+    public static String getUpdate(TableMeta tableMeta, List<TableMeta.ColumnMeta> columns) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("UPDATE `").append(tableMeta.getName()).append("` SET ");
+        builder.append(columns.stream()
+                .map(columnMeta -> String.format("`%s` = ?", columnMeta.getName()))
+                .collect(Collectors.joining(", ")));
+        builder.append(" WHERE `").append(tableMeta.getPrimaryColumn().getName()).append("` = ?");
         return builder.toString();
     }
 
@@ -126,6 +182,20 @@ public class SqlBuilder {
         return builder.toString();
     }
 
+    public static String getSelectIn(TableMeta tableMeta, int count) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("SELECT * FROM `").append(tableMeta.getName()).append("` WHERE `")
+                .append(tableMeta.getPrimaryColumn().getName()).append("` IN (");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append("?");
+        }
+        builder.append(");");
+        return builder.toString();
+    }
+
     public static String getSelectField(TableMeta tableMeta, List<String> fields) {
         StringBuilder builder = new StringBuilder();
         builder.append("SELECT * FROM `").append(tableMeta.getName()).append("`");
@@ -159,6 +229,100 @@ public class SqlBuilder {
         return builder.toString();
     }
 
+    public static String getCreateIdSegment(String tableName) {
+        return String.format("CREATE TABLE IF NOT EXISTS `%s` (\n `name` varchar(64) NOT NULL,\n `maxId` bigint NOT NULL,\n PRIMARY KEY (`name`)\n);", tableName);
+    }
+
+    public static String getInsertIdSegment(String tableName) {
+        return String.format("INSERT IGNORE INTO `%s` (`name`, `maxId`) VALUES (?, ?);", tableName);
+    }
+
+    public static String getIncreaseIdSegment(String tableName) {
+        return String.format("UPDATE `%s` SET `maxId` = `maxId` + ? WHERE `name` = ?;", tableName);
+    }
+
+    public static String getIdSegment(String tableName) {
+        return String.format("SELECT `maxId` FROM `%s` WHERE `name` = ?;", tableName);
+    }
+
+    public static String getMinPrimaryKey(TableMeta tableMeta) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("SELECT MIN(`").append(tableMeta.getPrimaryColumn().getName()).append("`) FROM `")
+                .append(tableMeta.getName()).append("`;");
+        return builder.toString();
+    }
+
+    public static String getSelectRange(TableMeta tableMeta) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("SELECT * FROM `").append(tableMeta.getName()).append("` WHERE `")
+                .append(tableMeta.getPrimaryColumn().getName()).append("` >= ? AND `")
+                .append(tableMeta.getPrimaryColumn().getName()).append("` <= ?;");
+        return builder.toString();
+    }
+
+    /**
+     * 编译仓库查询, 参数顺序与RepositoryQuery.listValue一致, primaryKeyOnly为true时只查询主键
+     */
+    public static String getSelectQuery(TableMeta tableMeta, RepositoryQuery query, boolean primaryKeyOnly) {
+        StringBuilder builder = new StringBuilder();
+        if (primaryKeyOnly) {
+            builder.append("SELECT `").append(tableMeta.getPrimaryColumn().getName()).append("` FROM `");
+        } else {
+            builder.append("SELECT * FROM `");
+        }
+        builder.append(tableMeta.getName()).append("`");
+        List<String> wheres = Lists.newArrayList();
+        query.getConditions().forEach(condition -> {
+            StringBuilder where = new StringBuilder();
+            where.append("`").append(condition.getField()).append("` ").append(condition.getOperator().getSql());
+            switch (condition.getOperator()) {
+                case IN:
+                    where.append(" (").append(condition.getValues().stream().map(value -> "?").collect(Collectors.joining(", "))).append(")");
+                    break;
+                case BETWEEN:
+                    where.append(" ? AND ?");
+                    break;
+                default:
+                    where.append(" ?");
+            }
+            wheres.add(where.toString());
+        });
+        List<RepositoryQuery.Order> orders = query.listOrder(tableMeta);
+        if (query.getAfter() != null) {
+            wheres.add(getKeyset(orders, 0));
+        }
+        if (!wheres.isEmpty()) {
+            builder.append(" WHERE ").append(String.join(" AND ", wheres));
+        }
+        if (!orders.isEmpty()) {
+            builder.append(" ORDER BY ").append(orders.stream()
+                    .map(order -> String.format("`%s` %s", order.getField(), order.isDesc() ? "DESC" : "ASC"))
+                    .collect(Collectors.joining(", ")));
+        }
+        if (query.getLimit() >= 0) {
+            builder.append(" LIMIT ?");
+        } else if (query.getOffset() > 0) {
+            builder.append(" LIMIT 18446744073709551615");
+        }
+        if (query.getOffset() > 0) {
+            builder.append(" OFFSET ?");
+        }
+        builder.append(";");
+        return builder.toString();
+    }
+
+    /**
+     * 游标条件 (a > ? OR (a = ? AND (b > ? ...))), 降序字段使用 <
+     */
+    private static String getKeyset(List<RepositoryQuery.Order> orders, int index) {
+        RepositoryQuery.Order order = orders.get(index);
+        String compare = String.format("`%s` %s ?", order.getField(), order.isDesc() ? "<" : ">");
+        if (index == orders.size() - 1) {
+            return compare;
+        }
+        return String.format("(%s OR (`%s` = ? AND %s))", compare, order.getField(), getKeyset(orders, index + 1));
+    }
+
     public static String getPrimaryColumnSelectField(TableMeta tableMeta, List<String> fields) {
         StringBuilder builder = new StringBuilder();
         builder.append("SELECT `").append(tableMeta.getPrimaryColumn().getName()).append("` FROM `")
@@ -1,5 +1,8 @@
 package com.swingfrog.summer.db.repository;
 
+import com.swingfrog.summer.db.repository.annotation.ColumnFormat;
+import com.swingfrog.summer.db.repository.annotation.IdStrategy;
+
 import java.lang.reflect.Field;
 import java.util.List;
 import java.util.Map;
@@ -11,11 +14,16 @@ public class TableMeta {
     private String charset;
     private String collate;
     private String comment;
+    private boolean preload;
+    private int preloadParallel;
+    private int shardCount;
+    private ColumnMeta shardColumn;
     private ColumnMeta primaryColumn;
     private List<ColumnMeta> columns;
     private Set<ColumnMeta> indexKeys;
     private Set<ColumnMeta> cacheKeys;
     private Map<String, ColumnMeta> columnMetaMap;
+    private EntityAccessor accessor;
 
     public String getName() {
         return name;
@@ -49,6 +57,42 @@ public class TableMeta {
         this.comment = comment;
     }
 
+    public boolean isPreload() {
+        return preload;
+    }
+
+    public void setPreload(boolean preload) {
+        this.preload = preload;
+    }
+
+    public int getPreloadParallel() {
+        return preloadParallel;
+    }
+
+    public void setPreloadParallel(int preloadParallel) {
+        this.preloadParallel = preloadParallel;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public void setShardCount(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    public ColumnMeta getShardColumn() {
+        return shardColumn;
+    }
+
+    public void setShardColumn(ColumnMeta shardColumn) {
+        this.shardColumn = shardColumn;
+    }
+
+    public boolean isSharded() {
+        return shardCount > 1;
+    }
+
     public ColumnMeta getPrimaryColumn() {
         return primaryColumn;
     }
@@ -81,6 +125,14 @@ public class TableMeta {
         this.cacheKeys = cacheKeys;
     }
 
+    public EntityAccessor getAccessor() {
+        return accessor;
+    }
+
+    public void setAccessor(EntityAccessor accessor) {
+        this.accessor = accessor;
+    }
+
     public Map<String, ColumnMeta> getColumnMetaMap() {
         return columnMetaMap;
     }
@@ -98,9 +150,13 @@ public class TableMeta {
         private boolean unsigned;
         private int length;
         private boolean auto;
+        private IdStrategy idStrategy;
         private String index;
         private String comment;
         private boolean intNumber;
+        private ColumnFormat format;
+        private EntityAccessor accessor;
+        private int ordinal;
 
         public String getName() {
             return name;
@@ -166,6 +222,14 @@ public class TableMeta {
             this.auto = auto;
         }
 
+        public IdStrategy getIdStrategy() {
+            return idStrategy;
+        }
+
+        public void setIdStrategy(IdStrategy idStrategy) {
+            this.idStrategy = idStrategy;
+        }
+
         public String getIndex() {
             return index;
         }
@@ -189,6 +253,31 @@ public class TableMeta {
         public void setIntNumber(boolean intNumber) {
             this.intNumber = intNumber;
         }
+
+        public ColumnFormat getFormat() {
+            return format;
+        }
+
+        public void setFormat(ColumnFormat format) {
+            this.format = format;
+        }
+
+        public boolean isBinary() {
+            return format == ColumnFormat.BINARY || format == ColumnFormat.DEFLATE;
+        }
+
+        public EntityAccessor getAccessor() {
+            return accessor;
+        }
+
+        public int getOrdinal() {
+            return ordinal;
+        }
+
+        void setAccessor(EntityAccessor accessor, int ordinal) {
+            this.accessor = accessor;
+            this.ordinal = ordinal;
+        }
     }
 
 }
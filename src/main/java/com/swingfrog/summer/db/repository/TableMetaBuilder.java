@@ -33,6 +33,8 @@ public class TableMetaBuilder {
             }
         }
         tableMeta.setComment(table.comment());
+        tableMeta.setPreload(table.preload());
+        tableMeta.setPreloadParallel(Math.max(1, table.preloadParallel()));
         tableMeta.setColumns(Lists.newLinkedList());
         tableMeta.setIndexKeys(Sets.newHashSet());
         tableMeta.setCacheKeys(Sets.newHashSet());
@@ -68,15 +70,63 @@ public class TableMetaBuilder {
         columnMetaMap.put(tableMeta.getPrimaryColumn().getName(), tableMeta.getPrimaryColumn());
         tableMeta.getColumns().forEach(columnMeta -> columnMetaMap.put(columnMeta.getName(), columnMeta));
         tableMeta.setColumnMetaMap(columnMetaMap);
+        EntityAccessor accessor = EntityAccessorBuilder.getEntityAccessor(tableMeta, clazz);
+        tableMeta.setAccessor(accessor);
+        tableMeta.getPrimaryColumn().setAccessor(accessor, 0);
+        for (int i = 0; i < tableMeta.getColumns().size(); i++) {
+            tableMeta.getColumns().get(i).setAccessor(accessor, i + 1);
+        }
+        tableMeta.setShardCount(Math.max(1, table.shardCount()));
+        if (tableMeta.isSharded()) {
+            TableMeta.ColumnMeta shardColumn = table.shardKey().length() == 0 ? tableMeta.getPrimaryColumn() : columnMetaMap.get(table.shardKey());
+            if (shardColumn == null) {
+                throw new RuntimeException(String.format("shard key[%s] not found - %s", table.shardKey(), clazz.getName()));
+            }
+            if (!shardColumn.isIntNumber() && shardColumn.getField().getType() != String.class) {
+                throw new RuntimeException(String.format("shard key[%s] must be int number or string - %s", shardColumn.getName(), clazz.getName()));
+            }
+            tableMeta.setShardColumn(shardColumn);
+        }
         return tableMeta;
     }
 
+    /**
+     * 分表的物理表, 除表名外与逻辑表相同
+     */
+    public static TableMeta getShardTableMeta(TableMeta tableMeta, int shard) {
+        TableMeta shardMeta = new TableMeta();
+        shardMeta.setName(getShardTableName(tableMeta, shard));
+        shardMeta.setCharset(tableMeta.getCharset());
+        shardMeta.setCollate(tableMeta.getCollate());
+        shardMeta.setComment(tableMeta.getComment());
+        shardMeta.setPreload(tableMeta.isPreload());
+        shardMeta.setPreloadParallel(tableMeta.getPreloadParallel());
+        shardMeta.setShardCount(tableMeta.getShardCount());
+        shardMeta.setShardColumn(tableMeta.getShardColumn());
+        shardMeta.setPrimaryColumn(tableMeta.getPrimaryColumn());
+        shardMeta.setColumns(tableMeta.getColumns());
+        shardMeta.setIndexKeys(tableMeta.getIndexKeys());
+        shardMeta.setCacheKeys(tableMeta.getCacheKeys());
+        shardMeta.setColumnMetaMap(tableMeta.getColumnMetaMap());
+        shardMeta.setAccessor(tableMeta.getAccessor());
+        return shardMeta;
+    }
+
+    public static String getShardTableName(TableMeta tableMeta, int shard) {
+        int width = Math.max(2, String.valueOf(tableMeta.getShardCount() - 1).length());
+        return String.format("%s_%0" + width + "d", tableMeta.getName(), shard);
+    }
+
     private static TableMeta.ColumnMeta getColumnMate(Field field) {
         TableMeta.ColumnMeta columnMeta = new TableMeta.ColumnMeta();
         Column column = field.getAnnotation(Column.class);
         columnMeta.setName(field.getName());
+        columnMeta.setFormat(column.format());
+        if (columnMeta.isBinary() && !TableSupport.isJavaBean(field.getGenericType())) {
+            throw new RuntimeException(String.format("binary format only for java bean column - %s.%s", field.getDeclaringClass().getName(), field.getName()));
+        }
         if (column.type().length() == 0) {
-            String type = getTableType(field.getGenericType());
+            String type = columnMeta.isBinary() ? "mediumblob" : getTableType(field.getGenericType());
             if (field.getType() == String.class) {
                 type = String.format("%s(%s)", type, column.length());
             }
@@ -96,6 +146,7 @@ public class TableMetaBuilder {
             if (columnMeta.isIntNumber()) {
                 columnMeta.setAuto(primaryKey.auto());
             }
+            columnMeta.setIdStrategy(primaryKey.strategy());
             columnMeta.setNonNull(true);
         }
         IndexKey indexKey = field.getAnnotation(IndexKey.class);
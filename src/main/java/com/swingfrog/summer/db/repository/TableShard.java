@@ -0,0 +1,85 @@
+package com.swingfrog.summer.db.repository;
+
+import com.google.common.collect.Maps;
+
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * 仓库的一张物理表及其SQL, 未分表时只有一个, topic为null时使用dao的数据源
+ */
+class TableShard {
+
+    private final int index;
+    private final String topic;
+    private final TableMeta tableMeta;
+    private final String insertSql;
+    private final String deleteSql;
+    private final String updateSql;
+    private final String selectSql;
+    private final String selectAllSql;
+    private final Map<Integer, String> upsertSqlMap = Maps.newConcurrentMap();
+    private final Map<Integer, String> selectInSqlMap = Maps.newConcurrentMap();
+    private final Map<String, String> querySqlMap = Maps.newConcurrentMap();
+    private final Map<BitSet, String> dirtyUpdateSqlMap = Maps.newConcurrentMap();
+
+    TableShard(int index, String topic, TableMeta tableMeta) {
+        this.index = index;
+        this.topic = topic;
+        this.tableMeta = tableMeta;
+        insertSql = SqlBuilder.getInsert(tableMeta);
+        deleteSql = SqlBuilder.getDelete(tableMeta);
+        updateSql = SqlBuilder.getUpdate(tableMeta);
+        selectSql = SqlBuilder.getSelect(tableMeta);
+        selectAllSql = SqlBuilder.getSelectAll(tableMeta);
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    String getTopic() {
+        return topic;
+    }
+
+    TableMeta getTableMeta() {
+        return tableMeta;
+    }
+
+    String getInsertSql() {
+        return insertSql;
+    }
+
+    String getDeleteSql() {
+        return deleteSql;
+    }
+
+    String getUpdateSql() {
+        return updateSql;
+    }
+
+    String getSelectSql() {
+        return selectSql;
+    }
+
+    String getSelectAllSql() {
+        return selectAllSql;
+    }
+
+    String getUpsertSql(int rows) {
+        return upsertSqlMap.computeIfAbsent(rows, size -> SqlBuilder.getUpsert(tableMeta, size));
+    }
+
+    String getSelectInSql(int count) {
+        return selectInSqlMap.computeIfAbsent(count, size -> SqlBuilder.getSelectIn(tableMeta, size));
+    }
+
+    String getQuerySql(RepositoryQuery query, boolean primaryKeyOnly) {
+        return querySqlMap.computeIfAbsent(query.getShape(primaryKeyOnly), shape -> SqlBuilder.getSelectQuery(tableMeta, query, primaryKeyOnly));
+    }
+
+    String getDirtyUpdateSql(BitSet dirty, DirtyTracker dirtyTracker) {
+        return dirtyUpdateSqlMap.computeIfAbsent(dirty, key -> SqlBuilder.getUpdate(tableMeta, dirtyTracker.listColumn(key)));
+    }
+
+}
@@ -68,6 +68,16 @@ public class TableValueBuilder {
         }
     }
 
+    /**
+     * 按列的格式转换为写入数据库的值
+     */
+    public static Object convert(Object obj, TableMeta.ColumnMeta columnMeta) {
+        if (columnMeta.isBinary()) {
+            return obj == null ? null : ColumnCodec.encode(obj, columnMeta.getFormat());
+        }
+        return convert(obj, columnMeta.getField().getGenericType());
+    }
+
     public static Object getFieldValue(Field field, Object obj) {
         Object res = null;
         try {
@@ -96,6 +106,18 @@ public class TableValueBuilder {
     }
 
     public static Object getColumnValue(TableMeta.ColumnMeta columnMeta, Object obj) {
+        EntityAccessor accessor = columnMeta.getAccessor();
+        if (accessor != null) {
+            return accessor.getValue(obj, columnMeta.getOrdinal());
+        }
+        if (columnMeta.isBinary()) {
+            try {
+                return convert(columnMeta.getField().get(obj), columnMeta);
+            } catch (IllegalAccessException e) {
+                log.error(e.getMessage(), e);
+                return null;
+            }
+        }
         return getFieldValue(columnMeta.getField(), obj);
     }
 
@@ -121,11 +143,14 @@ public class TableValueBuilder {
     public static Object[] listValidValueByOptional(TableMeta tableMeta, Map<String, Object> optional, List<String> fields) {
         return fields.stream().map(field -> {
             TableMeta.ColumnMeta columnMeta = tableMeta.getColumnMetaMap().get(field);
-            return convert(optional.get(field), columnMeta.getField().getGenericType());
+            return convert(optional.get(field), columnMeta);
         }).toArray();
     }
 
     public static Object[] listUpdateValue(TableMeta tableMeta, Object obj) {
+        if (tableMeta.getAccessor() != null) {
+            return tableMeta.getAccessor().listUpdateValue(obj);
+        }
         List<Object> list = tableMeta.getColumns().stream()
                 .filter(columnMeta -> !columnMeta.isReadOnly())
                 .map(columnMeta -> getColumnValue(columnMeta, obj))
@@ -135,6 +160,9 @@ public class TableValueBuilder {
     }
 
     public static Object[] listInsertValue(TableMeta tableMeta, Object obj) {
+        if (tableMeta.getAccessor() != null) {
+            return tableMeta.getAccessor().listInsertValue(obj, getPrimaryKeyValue(tableMeta, obj));
+        }
         List<Object> list = tableMeta.getColumns().stream()
                 .map(columnMeta -> getColumnValue(columnMeta, obj))
                 .collect(Collectors.toList());
@@ -143,6 +171,9 @@ public class TableValueBuilder {
     }
 
     public static Object[] listInsertValue(TableMeta tableMeta, Object obj, Object primaryKey) {
+        if (tableMeta.getAccessor() != null) {
+            return tableMeta.getAccessor().listInsertValue(obj, primaryKey);
+        }
         List<Object> list = tableMeta.getColumns().stream()
                 .map(columnMeta -> getColumnValue(columnMeta, obj))
                 .collect(Collectors.toList());
@@ -15,5 +15,6 @@ public @interface Column {
     boolean unsigned() default false;
     int length() default 255;
     String comment() default "";
+    ColumnFormat format() default ColumnFormat.JSON;
 
 }
@@ -0,0 +1,24 @@
+package com.swingfrog.summer.db.repository.annotation;
+
+/**
+ * java bean列的存储格式
+ */
+public enum ColumnFormat {
+
+    /**
+     * json文本, longtext
+     */
+    JSON,
+
+    /**
+     * json的utf-8字节加1字节标记, mediumblob, 不经过字符集转换, 大小与JSON相同, 只有DEFLATE能减少存储
+     */
+    BINARY,
+
+    /**
+     * json的utf-8字节, 超过一定长度时使用deflate压缩, mediumblob
+     * 已有的JSON列改为BINARY/DEFLATE时启动时修改为mediumblob, 原有的文本仍可读取; 不能再改回JSON
+     */
+    DEFLATE
+
+}
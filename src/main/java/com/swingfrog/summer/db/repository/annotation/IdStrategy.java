@@ -0,0 +1,28 @@
+package com.swingfrog.summer.db.repository.annotation;
+
+/**
+ * 自增主键的生成方式
+ */
+public enum IdStrategy {
+
+    /**
+     * 启动时取表中最大主键, 之后在内存中递增, 只适用于单进程写入
+     */
+    MAX,
+
+    /**
+     * 毫秒时间戳+节点id+序列, 节点id由id.nodeId配置, 主键必须为long
+     */
+    SNOWFLAKE,
+
+    /**
+     * 号段, 从数据库的号段表按id.segmentSize批量分配
+     */
+    SEGMENT_DB,
+
+    /**
+     * 号段, 从redis计数器按id.segmentSize批量分配
+     */
+    SEGMENT_REDIS
+
+}
@@ -10,5 +10,7 @@ import java.lang.annotation.Target;
 public @interface PrimaryKey {
 
     boolean auto() default true;
+    /**自增主键的生成方式, 多个进程写入同一张表时使用SNOWFLAKE或SEGMENT*/
+    IdStrategy strategy() default IdStrategy.MAX;
 
 }
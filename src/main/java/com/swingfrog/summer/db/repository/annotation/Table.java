@@ -13,5 +13,13 @@ public @interface Table {
     String charset() default "";
     String collate() default "";
     String comment() default "";
+    /**启动时流式加载整张表到缓存, 只对缓存仓库有效*/
+    boolean preload() default false;
+    /**预加载的并行数, 整数主键时按主键范围拆分*/
+    int preloadParallel() default 1;
+    /**分表数量, 大于1时按分表键拆分为name_00..name_NN多张物理表*/
+    int shardCount() default 1;
+    /**分表键字段名, 只支持整数和字符串, 写入后不能修改, 默认为主键*/
+    String shardKey() default "";
 
 }
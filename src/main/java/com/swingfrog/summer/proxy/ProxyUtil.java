@@ -69,17 +69,17 @@ public class ProxyUtil {
 					RedisMgr.get().setDiscardConnectionLevelForRemote();
 					Object res = method.invoke(obj, args);
 					if (transaction) {
-						DataBaseMgr.get().getConnection().commit();
+						DataBaseMgr.get().commitTransaction();
 					}
 					return res;
 				} catch (InvocationTargetException e) {
 					if (transaction) {
-						DataBaseMgr.get().getConnection().rollback();
+						DataBaseMgr.get().rollbackTransaction();
 					}	
 					throw e.getTargetException();
 				} catch (Exception e) {
 					if (transaction) {
-						DataBaseMgr.get().getConnection().rollback();
+						DataBaseMgr.get().rollbackTransaction();
 					}					
 					throw e;
 				} finally {
@@ -130,7 +130,7 @@ public class ProxyUtil {
 				if (clientRemote == null) {
 					throw new CreateRemoteFailException("clientRemote is null");
 				}
-				return clientRemote.rsyncRemote(obj.getClass().getSimpleName(), method.getName(), map, method.getGenericReturnType());
+				return ClientRemote.rsyncRemote(clientRemote, () -> ClientMgr.get().getClientRemote(cluster, name), obj.getClass().getSimpleName(), method.getName(), map, method.getGenericReturnType());
 			}
 		});
 		return (T)obj;
@@ -172,7 +172,7 @@ public class ProxyUtil {
 				if (clientRemote == null) {
 					throw new CreateRemoteFailException("clientRemote is null");
 				}
-				return clientRemote.rsyncRemote(obj.getClass().getSimpleName(), method.getName(), map, method.getGenericReturnType());
+				return ClientRemote.rsyncRemote(clientRemote, () -> ClientMgr.get().getRandomClientRemote(cluster), obj.getClass().getSimpleName(), method.getName(), map, method.getGenericReturnType());
 			}
 		});
 		return (T)obj;
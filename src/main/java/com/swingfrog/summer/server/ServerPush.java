@@ -58,6 +58,24 @@ public class ServerPush {
 		syncPushToSessionContext(sessionContext, remote, method, data);
 	}
 	
+	public void asyncPushToClusterHashServer(String cluster, Object key, String remote, String method, Object data) {
+		SessionContext sessionContext = RpcClientMgr.get().getHashClientSessionContext(cluster, key);
+		if (sessionContext == null) {
+			throw new NotFoundSessionContextException(cluster);
+		}
+		log.debug("server push to cluster[{}] key[{}]", cluster, key);
+		asyncPushToSessionContext(sessionContext, remote, method, data);
+	}
+	
+	public void syncPushToClusterHashServer(String cluster, Object key, String remote, String method, Object data) {
+		SessionContext sessionContext = RpcClientMgr.get().getHashClientSessionContext(cluster, key);
+		if (sessionContext == null) {
+			throw new NotFoundSessionContextException(cluster);
+		}
+		log.debug("server push to cluster[{}] key[{}]", cluster, key);
+		syncPushToSessionContext(sessionContext, remote, method, data);
+	}
+	
 	public void asyncPushToClusterThisServer(String cluster, String serverName, String remote, String method, Object data) {
 		SessionContext sessionContext = RpcClientMgr.get().getClientSessionContext(cluster, serverName);
 		if (sessionContext == null) {
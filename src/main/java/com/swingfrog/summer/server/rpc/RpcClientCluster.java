@@ -1,57 +1,108 @@
 package com.swingfrog.summer.server.rpc;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import com.swingfrog.summer.server.SessionContext;
 
 public class RpcClientCluster {
 
-	private int next = -1;
+	private AtomicInteger next = new AtomicInteger(-1);
 	private List<RpcClientGroup> clientGroupList;
 	private Map<String, RpcClientGroup> nameToClientGroup;
+	private volatile RpcClientHashRing hashRing = RpcClientHashRing.build(new ArrayList<>());
 	
 	public RpcClientCluster() {
-		clientGroupList = new ArrayList<>();
-		nameToClientGroup = new HashMap<>();
+		clientGroupList = new CopyOnWriteArrayList<>();
+		nameToClientGroup = new ConcurrentHashMap<>();
 	}
 	
 	public void addClient(String name, RpcClientGroup clientGroup) {
 		clientGroupList.add(clientGroup);
 		nameToClientGroup.put(name, clientGroup);
+		rebuildHashRing();
+	}
+	
+	public void addClient(String name, SessionContext sctx) {
+		RpcClientGroup clientGroup = nameToClientGroup.get(name);
+		if (clientGroup == null) {
+			synchronized (this) {
+				clientGroup = nameToClientGroup.get(name);
+				if (clientGroup == null) {
+					clientGroup = new RpcClientGroup();
+					clientGroupList.add(clientGroup);
+					nameToClientGroup.put(name, clientGroup);
+				}
+			}
+		}
+		clientGroup.addClient(sctx);
+		rebuildHashRing();
 	}
 	
 	public void removeClient(SessionContext sctx) {
+		boolean removed = false;
 		Iterator<RpcClientGroup> ite = clientGroupList.iterator();
 		while (ite.hasNext()) {
-			ite.next().removeClient(sctx);
+			removed |= ite.next().removeClient(sctx);
+		}
+		if (removed) {
+			rebuildHashRing();
 		}
 	}
 	
+	private synchronized void rebuildHashRing() {
+		hashRing = RpcClientHashRing.build(nameToClientGroup.entrySet().stream()
+				.filter(entry -> !entry.getValue().isEmpty())
+				.map(Map.Entry::getKey)
+				.collect(Collectors.toList()));
+	}
+	
 	public RpcClientGroup getRpcClientGroup(String name) {
 		return nameToClientGroup.get(name);
 	}
 	
 	public SessionContext getClientByName(String name) {
-		return nameToClientGroup.get(name).getClientWithNext();
+		RpcClientGroup clientGroup = nameToClientGroup.get(name);
+		if (clientGroup == null) {
+			return null;
+		}
+		return clientGroup.getClientWithNext();
 	}
 	
 	public SessionContext getClientWithNext() {
-		int size = clientGroupList.size();
+		Object[] groups = clientGroupList.toArray();
+		int size = groups.length;
 		if (size > 0) {
 			if (size == 1) {
-				return clientGroupList.get(0).getClientWithNext();
+				return ((RpcClientGroup) groups[0]).getClientWithNext();
 			}
-			next ++;
-			next = next % size;
-			return clientGroupList.get(next % size).getClientWithNext();
+			return ((RpcClientGroup) groups[Math.floorMod(next.incrementAndGet(), size)]).getClientWithNext();
 		}
 		return null;
 	}
 	
+	public SessionContext getClientWithHash(Object key) {
+		String serverName = hashRing.getServerName(key);
+		if (serverName == null) {
+			return null;
+		}
+		RpcClientGroup clientGroup = nameToClientGroup.get(serverName);
+		if (clientGroup == null) {
+			return null;
+		}
+		return clientGroup.getClientWithHash(key);
+	}
+	
+	public String getServerNameWithHash(Object key) {
+		return hashRing.getServerName(key);
+	}
+	
 	public List<SessionContext> listAllClients() {
 		List<SessionContext> list = new ArrayList<>();
 		Iterator<RpcClientGroup> ite = clientGroupList.iterator();
@@ -65,9 +116,12 @@ public class RpcClientCluster {
 		List<SessionContext> list = new ArrayList<>();
 		Iterator<RpcClientGroup> ite = clientGroupList.iterator();
 		while (ite.hasNext()) {
-			list.add(ite.next().getClientWithNext());
+			SessionContext sctx = ite.next().getClientWithNext();
+			if (sctx != null) {
+				list.add(sctx);
+			}
 		}
 		return list;
 	}
-	
+
 }
@@ -1,17 +1,18 @@
 package com.swingfrog.summer.server.rpc;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.swingfrog.summer.server.SessionContext;
 
 public class RpcClientGroup {
 
-	private int next = -1;
+	private AtomicInteger next = new AtomicInteger(-1);
 	private List<SessionContext> clientList;
 	
 	public RpcClientGroup() {
-		clientList = new ArrayList<>();
+		clientList = new CopyOnWriteArrayList<>();
 	}
 	
 	public void addClient(SessionContext client) {
@@ -19,14 +20,25 @@ public class RpcClientGroup {
 	}
 	
 	public SessionContext getClientWithNext() {
-		int size = clientList.size();
+		Object[] clients = clientList.toArray();
+		int size = clients.length;
 		if (size > 0) {
 			if (size == 1) {
-				return clientList.get(0);
+				return (SessionContext) clients[0];
 			}
-			next ++;
-			next = next % size;
-			return clientList.get(next % size);
+			return (SessionContext) clients[Math.floorMod(next.incrementAndGet(), size)];
+		}
+		return null;
+	}
+	
+	public SessionContext getClientWithHash(Object key) {
+		Object[] clients = clientList.toArray();
+		int size = clients.length;
+		if (size > 0) {
+			if (size == 1) {
+				return (SessionContext) clients[0];
+			}
+			return (SessionContext) clients[Math.floorMod(RpcClientHashRing.hash(key), size)];
 		}
 		return null;
 	}
@@ -35,8 +47,12 @@ public class RpcClientGroup {
 		return clientList;
 	}
 	
-	public void removeClient(SessionContext sctx) {
-		clientList.remove(sctx);
+	public boolean removeClient(SessionContext sctx) {
+		return clientList.remove(sctx);
 	}
 	
+	public boolean isEmpty() {
+		return clientList.isEmpty();
+	}
+
 }
@@ -0,0 +1,59 @@
+package com.swingfrog.summer.server.rpc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * 一致性哈希环, 节点为服务器名称, 每个节点对应多个虚拟节点
+ */
+public class RpcClientHashRing {
+
+	private static final int VIRTUAL_NODE_NUM = 160;
+	private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+	private static final RpcClientHashRing EMPTY = new RpcClientHashRing(new TreeMap<>());
+	
+	private final NavigableMap<Integer, String> ring;
+	
+	private RpcClientHashRing(NavigableMap<Integer, String> ring) {
+		this.ring = ring;
+	}
+	
+	public static RpcClientHashRing build(Collection<String> serverNames) {
+		if (serverNames.isEmpty()) {
+			return EMPTY;
+		}
+		NavigableMap<Integer, String> ring = new TreeMap<>();
+		for (String serverName : serverNames) {
+			for (int i = 0; i < VIRTUAL_NODE_NUM; i++) {
+				ring.put(hash(serverName + "#" + i), serverName);
+			}
+		}
+		return new RpcClientHashRing(ring);
+	}
+	
+	public static int hash(Object key) {
+		return HASH_FUNCTION.hashString(String.valueOf(key), StandardCharsets.UTF_8).asInt();
+	}
+	
+	public String getServerName(Object key) {
+		if (ring.isEmpty()) {
+			return null;
+		}
+		Map.Entry<Integer, String> entry = ring.ceilingEntry(hash(key));
+		if (entry == null) {
+			entry = ring.firstEntry();
+		}
+		return entry.getValue();
+	}
+	
+	public boolean isEmpty() {
+		return ring.isEmpty();
+	}
+
+}
@@ -29,13 +29,7 @@ public class RpcClientMgr {
 	
 	public void add(SessionContext sctx, String cluster, String serverName) {
 		log.debug("server register rpc client cluster[{}] serverName[{}] sessionContext[{}]", cluster, serverName, sctx);
-		RpcClientCluster clientCluster = nameToCluster.get(cluster);
-		if (clientCluster == null) {
-			clientCluster = new RpcClientCluster();
-			clientCluster.addClient(serverName, new RpcClientGroup());
-			nameToCluster.put(cluster, clientCluster);
-		}
-		clientCluster.getRpcClientGroup(serverName).addClient(sctx);
+		nameToCluster.computeIfAbsent(cluster, key -> new RpcClientCluster()).addClient(serverName, sctx);
 	}
 	
 	public void remove(SessionContext sctx) {
@@ -53,6 +47,22 @@ public class RpcClientMgr {
 		return null;
 	}
 	
+	public SessionContext getHashClientSessionContext(String cluster, Object key) {
+		RpcClientCluster clientCluster = nameToCluster.get(cluster);
+		if (clientCluster != null) {
+			return clientCluster.getClientWithHash(key);
+		}
+		return null;
+	}
+	
+	public String getHashServerName(String cluster, Object key) {
+		RpcClientCluster clientCluster = nameToCluster.get(cluster);
+		if (clientCluster != null) {
+			return clientCluster.getServerNameWithHash(key);
+		}
+		return null;
+	}
+	
 	public SessionContext getRandomClientSessionContext(String cluster) {
 		RpcClientCluster clientCluster = nameToCluster.get(cluster);
 		if (clientCluster != null) {
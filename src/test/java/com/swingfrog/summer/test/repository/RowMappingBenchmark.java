@@ -0,0 +1,176 @@
+package com.swingfrog.summer.test.repository;
+
+import com.alibaba.fastjson.JSON;
+import com.google.common.collect.Lists;
+import com.swingfrog.summer.db.repository.RepositoryBeanProcessor;
+import com.swingfrog.summer.db.repository.RepositoryRowProcessor;
+import com.swingfrog.summer.db.repository.TableMeta;
+import com.swingfrog.summer.db.repository.TableMetaBuilder;
+import com.swingfrog.summer.db.repository.TableValueBuilder;
+import com.swingfrog.summer.db.repository.annotation.Column;
+import com.swingfrog.summer.db.repository.annotation.PrimaryKey;
+import com.swingfrog.summer.db.repository.annotation.Table;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.dbutils.BasicRowProcessor;
+import org.apache.commons.dbutils.RowProcessor;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 行映射吞吐量对比: 反射的BeanProcessor + json二次转换 与 生成的EntityAccessor, 使用内存中的结果集, 不需要数据库
+ */
+@Slf4j
+public class RowMappingBenchmark {
+
+    private static final int ROWS = 1000;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURE_ROUNDS = 1000;
+
+    @Getter
+    @Setter
+    @Table(name = "t_benchmark")
+    public static class Bench {
+        @PrimaryKey
+        @Column
+        private long id;
+        @Column
+        private int level;
+        @Column
+        private Long gold;
+        @Column
+        private boolean online;
+        @Column
+        private String name;
+        @Column
+        private java.util.Date loginTime;
+        @Column
+        private List<Integer> items;
+        @Column
+        private Map<String, Integer> quests;
+    }
+
+    public static void main(String[] args) throws Exception {
+        TableMeta tableMeta = TableMetaBuilder.getTableMeta(Bench.class);
+        String[] columns = {"id", "level", "gold", "online", "name", "loginTime", "items", "quests"};
+        List<Object[]> rows = Lists.newArrayList();
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(new Object[]{(long) i, i % 100, i * 10L, i % 2 == 0, "player" + i, new Timestamp(System.currentTimeMillis()),
+                    JSON.toJSONString(Lists.newArrayList(i, i + 1, i + 2)), JSON.toJSONString(java.util.Collections.singletonMap("q" + i, i))});
+        }
+
+        RowProcessor reflect = new BasicRowProcessor(new RepositoryBeanProcessor());
+        RowProcessor accessor = new RepositoryRowProcessor(tableMeta.getAccessor());
+
+        List<Bench> reflectList = reflectMapping(reflect, tableMeta, columns, rows);
+        List<Bench> accessorList = accessor.toBeanList(resultSet(columns, rows), Bench.class);
+        for (int i = 0; i < ROWS; i++) {
+            String expect = JSON.toJSONString(reflectList.get(i));
+            String actual = JSON.toJSONString(accessorList.get(i));
+            if (!expect.equals(actual)) {
+                throw new IllegalStateException(String.format("row %s mismatch %s %s", i, expect, actual));
+            }
+        }
+
+        measure("read reflect", () -> {
+            try {
+                return reflectMapping(reflect, tableMeta, columns, rows);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        measure("read accessor", () -> {
+            try {
+                return accessor.toBeanList(resultSet(columns, rows), Bench.class);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        measure("write reflect", () -> {
+            List<Object[]> list = Lists.newArrayListWithCapacity(ROWS);
+            accessorList.forEach(obj -> {
+                List<Object> values = Lists.newArrayList();
+                values.add(TableValueBuilder.getFieldValue(tableMeta.getPrimaryColumn().getField(), obj));
+                tableMeta.getColumns().forEach(columnMeta -> values.add(TableValueBuilder.getFieldValue(columnMeta.getField(), obj)));
+                list.add(values.toArray());
+            });
+            return list;
+        });
+        measure("write accessor", () -> {
+            List<Object[]> list = Lists.newArrayListWithCapacity(ROWS);
+            accessorList.forEach(obj -> list.add(TableValueBuilder.listInsertValue(tableMeta, obj)));
+            return list;
+        });
+    }
+
+    private static List<Bench> reflectMapping(RowProcessor rowProcessor, TableMeta tableMeta, String[] columns, List<Object[]> rows) throws SQLException {
+        List<Bench> list = rowProcessor.toBeanList(resultSet(columns, rows), Bench.class);
+        list.forEach(obj -> tableMeta.getColumns().forEach(columnMeta -> {
+            Object value = TableValueBuilder.getFieldValue(columnMeta.getField(), obj);
+            if (value instanceof Collection || value instanceof Map) {
+                TableValueBuilder.jsonConvertJavaBean(columnMeta.getField(), obj);
+            }
+        }));
+        return list;
+    }
+
+    private static void measure(String name, Supplier<List<?>> supplier) {
+        long check = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            check += supplier.get().size();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            check += supplier.get().size();
+        }
+        long cost = System.nanoTime() - start;
+        log.info("{}: {} rows/s ({})", name, (long) ((double) ROWS * MEASURE_ROUNDS * 1_000_000_000L / cost), check);
+    }
+
+    private static ResultSet resultSet(String[] columns, List<Object[]> rows) {
+        ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(),
+                new Class[]{ResultSetMetaData.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount": return columns.length;
+                        case "getColumnLabel":
+                        case "getColumnName": return columns[(int) args[0] - 1];
+                        default: throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        int[] cursor = {-1};
+        Object[] last = {null};
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class[]{ResultSet.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "next": return ++cursor[0] < rows.size();
+                case "getMetaData": return metaData;
+                case "wasNull": return last[0] == null;
+                case "close": return null;
+                default:
+            }
+            if (args == null || args.length != 1 || !(args[0] instanceof Integer)) {
+                throw new UnsupportedOperationException(method.getName());
+            }
+            Object value = rows.get(cursor[0])[(int) args[0] - 1];
+            last[0] = value;
+            switch (method.getName()) {
+                case "getObject":
+                case "getTimestamp": return value;
+                case "getString": return value == null ? null : value.toString();
+                case "getLong": return value == null ? 0L : ((Number) value).longValue();
+                case "getInt": return value == null ? 0 : ((Number) value).intValue();
+                case "getBoolean": return value != null && (Boolean) value;
+                default: throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.swingfrog.summer.test.unitofwork.dao;
+
+import com.swingfrog.summer.annotation.Dao;
+import com.swingfrog.summer.db.DataBaseMgr;
+import com.swingfrog.summer.db.repository.RepositoryDao;
+import com.swingfrog.summer.test.unitofwork.model.Account;
+
+import java.util.List;
+
+@Dao
+public class AccountDao extends RepositoryDao<Account, Long> {
+
+    /**
+     * 在事务中嵌套工作单元写入, rollback为true时最后抛出异常回滚整个事务
+     */
+    public boolean addInTransaction(List<Account> accounts, boolean rollback) {
+        return transaction(() -> {
+            for (Account account : accounts) {
+                unitOfWork(() -> unitOfWork(() -> add(account)));
+                if (!DataBaseMgr.get().isTransaction()) {
+                    throw new IllegalStateException("transaction lost after nested unit of work");
+                }
+            }
+            if (rollback) {
+                throw new RuntimeException("rollback");
+            }
+        });
+    }
+
+    /**
+     * 嵌套的工作单元结束后外层工作单元仍然持有连接
+     */
+    public boolean isPinnedAfterNested() {
+        boolean[] pinned = {false};
+        unitOfWork(() -> {
+            unitOfWork(this::list);
+            pinned[0] = DataBaseMgr.get().isUnitOfWork();
+        });
+        return pinned[0] && !DataBaseMgr.get().isUnitOfWork();
+    }
+
+}
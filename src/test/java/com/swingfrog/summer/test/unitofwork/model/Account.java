@@ -0,0 +1,27 @@
+package com.swingfrog.summer.test.unitofwork.model;
+
+import com.swingfrog.summer.db.repository.annotation.Column;
+import com.swingfrog.summer.db.repository.annotation.PrimaryKey;
+import com.swingfrog.summer.db.repository.annotation.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor(staticName = "of")
+@Table(name = "t_unit_of_work_test", comment = "工作单元测试")
+public class Account {
+
+    @PrimaryKey
+    @Column(comment = "ID")
+    private long id;
+
+    @Column(comment = "名称")
+    private String name;
+
+}
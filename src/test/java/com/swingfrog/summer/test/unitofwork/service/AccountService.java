@@ -0,0 +1,53 @@
+package com.swingfrog.summer.test.unitofwork.service;
+
+import com.google.common.collect.Lists;
+import com.swingfrog.summer.annotation.Autowired;
+import com.swingfrog.summer.annotation.Service;
+import com.swingfrog.summer.lifecycle.Lifecycle;
+import com.swingfrog.summer.lifecycle.LifecycleInfo;
+import com.swingfrog.summer.test.unitofwork.dao.AccountDao;
+import com.swingfrog.summer.test.unitofwork.model.Account;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+@Service
+public class AccountService implements Lifecycle {
+
+    @Autowired
+    private AccountDao accountDao;
+
+    @Override
+    public LifecycleInfo getInfo() {
+        return LifecycleInfo.build("AccountService");
+    }
+
+    @Override
+    public void start() {
+        log.info("AccountService.start");
+        accountDao.list().forEach(accountDao::remove);
+
+        check("rollback returns false", !accountDao.addInTransaction(Lists.newArrayList(Account.of(0, "a"), Account.of(0, "b")), true));
+        check("rollback discards rows written in nested unit of work", accountDao.list().isEmpty());
+
+        check("commit returns true", accountDao.addInTransaction(Lists.newArrayList(Account.of(0, "c"), Account.of(0, "d")), false));
+        check("commit keeps all rows", accountDao.list().size() == 2);
+
+        check("outer unit of work pinned after nested close", accountDao.isPinnedAfterNested());
+
+        accountDao.list().forEach(accountDao::remove);
+        log.info("unit of work test finish");
+    }
+
+    private static void check(String name, boolean ok) {
+        if (!ok) {
+            throw new IllegalStateException("unit of work test failure: " + name);
+        }
+        log.info("unit of work test ok: {}", name);
+    }
+
+    @Override
+    public void stop() {
+        log.info("AccountService.stop");
+    }
+
+}